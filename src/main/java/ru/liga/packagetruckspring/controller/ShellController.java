@@ -4,11 +4,17 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
 import org.springframework.shell.standard.ShellOption;
-import ru.liga.packagetruckspring.model.Package;
-import ru.liga.packagetruckspring.model.Structure;
+import ru.liga.packagetruckspring.model.BatchOrder;
+import ru.liga.packagetruckspring.model.PackagePlan;
+import ru.liga.packagetruckspring.model.PackingMode;
+import ru.liga.packagetruckspring.model.PackingResult;
+import ru.liga.packagetruckspring.model.Shape;
 import ru.liga.packagetruckspring.model.Truck;
+import ru.liga.packagetruckspring.model.Violation;
+import ru.liga.packagetruckspring.packing.PackageOrder;
 import ru.liga.packagetruckspring.service.*;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Locale;
 
@@ -22,10 +28,15 @@ import java.util.Locale;
 public class ShellController {
 
 	private final StructureService structureService;
-	private final PackageService packageService;
+	private final PackingService packingService;
 	private final TruckService truckService;
 	private final FileService fileService;
 	private final PrintService printService;
+	private final MetricsService metricsService;
+	private final BatchService batchService;
+	private final PlanService planService;
+	private final VerifyService verifyService;
+	private final UnloadService unloadService;
 
 	@ShellMethod("list-packages")
 	public void listPackages() {
@@ -34,8 +45,7 @@ public class ShellController {
 
 	@ShellMethod("reload-packages")
 	public void reloadPackages(@ShellOption String filePath) {
-		List<Structure> structure = fileService.readFileData(filePath);
-		structureService.reloadStructures(structure);
+		structureService.replaceStructures(consumer -> fileService.streamFileData(filePath, consumer));
 	}
 
 	@ShellMethod("print-package")
@@ -69,30 +79,85 @@ public class ShellController {
 	}
 
 	@ShellMethod("pack-truck")
-	public void packTruck(@ShellOption String mode, @ShellOption("--listName") String listName, @ShellOption("--size") String size, @ShellOption String result) {
-		List<Truck> trucks;
-		List<String> packages;
-		truckService.createTruck(size);
-		if(listName.isEmpty()) {
-			packages = structureService.getAllForms();
-		} else {
-			packages = structureService.getFormsForName(listName);
+	public void packTruck(@ShellOption String mode, @ShellOption("--listName") String listName, @ShellOption("--size") String size, @ShellOption String result,
+						  @ShellOption(defaultValue = "5") long budget, @ShellOption(defaultValue = "0") int offset,
+						  @ShellOption(defaultValue = "0") int limit, @ShellOption(defaultValue = "width-bottom") String order) {
+		PackageOrder packageOrder = PackageOrder.parse(order);
+		boolean json = result.toUpperCase(Locale.ROOT).contains("JSON");
+		if (json && PackingMode.fromString(mode) == PackingMode.SKYLINE) {
+			PackagePlan plan = packingService.packSkylineBatch(listName, size, packageOrder);
+			metricsService.recordStage("output",
+					() -> fileService.writeResultJson(writer -> truckService.writeJsonForPlan(plan, writer)));
+			return;
 		}
-		List<Package> sortPackages = packageService.sortSimpleOrders(packages);
-		if(mode.toUpperCase(Locale.ROOT).contains("S")) {
-			trucks = truckService.createSimplePack(sortPackages);
-		} else {
-			List<Truck> trucksForWidth = truckService.createComplexPackForWidth(sortPackages);
-			List<Package> sortPackagesComplex = packageService.sortComplexOrders(trucksForWidth);
-			truckService.createTruck(size);
-			trucks = truckService.createComplexPackFoHeight(sortPackagesComplex);
+		PackingResult packingResult = packingService.pack(mode, listName, size, Duration.ofSeconds(budget), packageOrder);
+		List<Truck> trucks = packingResult.getTrucks();
+		if (!packingResult.getStrategies().isEmpty()) {
+			printService.printStrategyReports(packingResult.getStrategies());
 		}
-		if(result.toUpperCase(Locale.ROOT).contains("JSON")) {
-			fileService.writeResultJson(truckService.createJsonForTruck(trucks));
-		} else {
-			printService.printTrucks(trucks);
+		if (packingResult.getMode() == PackingMode.EXACT) {
+			printService.printOptimality(packingResult.isOptimal());
 		}
+		metricsService.recordStage("output", () -> {
+			if (json) {
+				fileService.writeResultJson(writer -> truckService.writeJsonForTruck(trucks, writer));
+			} else {
+				printService.printTrucks(trucks, offset, limit);
+			}
+		});
 	}
 
+	@ShellMethod("create-plan")
+	public void createPlan(@ShellOption("--listName") String listName, @ShellOption("--size") String size,
+						   @ShellOption(defaultValue = "0") int offset, @ShellOption(defaultValue = "0") int limit) {
+		printService.printTrucks(planService.createPlan(listName, size), offset, limit);
+	}
+
+	@ShellMethod("add-to-plan")
+	public void addToPlan(@ShellOption String name) {
+		printService.printPlanTruck(name, planService.addToPlan(name));
+	}
+
+	@ShellMethod("remove-from-plan")
+	public void removeFromPlan(@ShellOption String name) {
+		planService.removeFromPlan(name);
+	}
+
+	@ShellMethod("print-plan")
+	public void printPlan(@ShellOption(defaultValue = "0") int offset, @ShellOption(defaultValue = "0") int limit) {
+		printService.printTrucks(planService.getTrucks(), offset, limit);
+	}
+
+	@ShellMethod("verify-plan")
+	public void verifyPlan(@ShellOption(defaultValue = "") String file,
+						   @ShellOption(value = "--listName", defaultValue = ShellOption.NULL) String listName) {
+		List<Shape> order = listName == null ? null
+				: listName.isEmpty() ? structureService.getAllShapes() : structureService.getShapesForName(listName);
+		List<Violation> violations = file.isEmpty()
+				? verifyService.verifyTrucks(planService.getTrucks(), order)
+				: verifyService.verifyFile(file, order);
+		printService.printViolations(violations);
+	}
+
+	@ShellMethod("unload")
+	public void unload(@ShellOption String file, @ShellOption(defaultValue = "false") boolean totalsOnly) {
+		printService.printUnload(truckConsumer -> unloadService.unload(file, truckConsumer), totalsOnly);
+	}
+
+	@ShellMethod("pack-batch")
+	public void packBatch(@ShellOption String filePath, @ShellOption(defaultValue = "batch-results") String outputDir,
+						  @ShellOption(defaultValue = "0") int threads) {
+		List<BatchOrder> orders = fileService.readBatchOrders(filePath);
+		printService.printBatchReport(batchService.packBatch(orders, outputDir, threads));
+	}
+
+	@ShellMethod("metrics")
+	public void metrics(@ShellOption(defaultValue = ShellOption.NULL) String file) {
+		String report = metricsService.report();
+		printService.printMetrics(report);
+		if (file != null) {
+			fileService.writeTextFile(file, report);
+		}
+	}
 
 }
@@ -2,6 +2,10 @@ package ru.liga.packagetruckspring.exception;
 
 public class CustomException extends RuntimeException {
 
+    public CustomException(String message) {
+        super(message);
+    }
+
     public CustomException(String message, Throwable cause) {
         super(message, cause);
     }
@@ -0,0 +1,18 @@
+package ru.liga.packagetruckspring.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Заказ пакетной погрузки из json: набор посылок и парк грузовиков.
+ */
+@Setter
+@Getter
+public class BatchOrder {
+
+    private String id;
+    private String mode;
+    private String listName;
+    private String size;
+
+}
@@ -0,0 +1,22 @@
+package ru.liga.packagetruckspring.model;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Итог пакетной погрузки: пропускная способность и задержки обработки заказов.
+ */
+@Getter
+@Builder
+public class BatchReport {
+
+	private final int orders;
+	private final int failed;
+	private final long elapsedMillis;
+	private final double ordersPerSecond;
+	private final double p50Millis;
+	private final double p90Millis;
+	private final double p99Millis;
+	private final double maxMillis;
+
+}
@@ -0,0 +1,254 @@
+package ru.liga.packagetruckspring.model;
+
+import lombok.Getter;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.RandomAccess;
+import java.util.TreeMap;
+
+/**
+ * Парк грузовиков, заданный блоками одинаковых кузовов, например "6x6*5000".
+ * Соседние записи с одинаковым кузовом объединяются в один блок. Блок хранит только размер кузова и количество
+ * грузовиков, а открытые грузовики хранятся отдельно по номеру, поэтому память и время работы с парком
+ * зависят от количества блоков и открытых грузовиков, а не от размера парка.
+ * Грузовик создаётся только при открытии через {@link #open(int)}.
+ * Как список парк доступен только для чтения: вместо ещё не открытого грузовика {@link #get(int)} и итератор
+ * возвращают общий для размера кузова пустой грузовик, загрузить который нельзя.
+ */
+public class Fleet extends AbstractList<Truck> implements RandomAccess {
+
+	private final List<Block> blocks = new ArrayList<>();
+	private final NavigableMap<Integer, Truck> opened = new TreeMap<>();
+	private final Map<Long, Truck> emptyViews = new HashMap<>();
+	private int size;
+
+	/**
+	 * Возвращает грузовики, открытые в парке или в обычном списке грузовиков.
+	 * Неоткрытые грузовики парка пусты, поэтому для подсчёта груза достаточно открытых.
+	 *
+	 * @param trucks парк или список грузовиков.
+	 * @return открытые грузовики парка в порядке номеров или сам список, если это не парк.
+	 */
+	public static Collection<Truck> loaded(List<Truck> trucks) {
+		return trucks instanceof Fleet ? ((Fleet) trucks).getOpened().values() : trucks;
+	}
+
+	/**
+	 * Возвращает грузовики, открытые в парке или в обычном списке грузовиков, вместе с их номерами.
+	 *
+	 * @param trucks парк или список грузовиков.
+	 * @return грузовики по номерам в порядке номеров.
+	 */
+	public static NavigableMap<Integer, Truck> numbered(List<Truck> trucks) {
+		if (trucks instanceof Fleet) {
+			return ((Fleet) trucks).getOpened();
+		}
+		NavigableMap<Integer, Truck> numbered = new TreeMap<>();
+		for (int i = 0; i < trucks.size(); i++) {
+			numbered.put(i, trucks.get(i));
+		}
+		return numbered;
+	}
+
+	/**
+	 * Добавляет в парк блок одинаковых грузовиков.
+	 *
+	 * @param height высота кузова.
+	 * @param width ширина кузова.
+	 * @param count количество грузовиков.
+	 */
+	public void addType(int height, int width, int count) {
+		lastBlock(height, width).count += count;
+		size += count;
+	}
+
+	/**
+	 * Добавляет в парк готовый грузовик.
+	 *
+	 * @param truck грузовик.
+	 */
+	public void addTruck(Truck truck) {
+		lastBlock(truck.getHeight(), truck.getWidth()).count++;
+		opened.put(size++, truck);
+	}
+
+	/**
+	 * Возвращает грузовик для загрузки, при первом обращении создавая его.
+	 *
+	 * @param index номер грузовика.
+	 * @return грузовик, который можно загружать.
+	 */
+	public Truck open(int index) {
+		Truck truck = opened.get(index);
+		if (truck == null) {
+			Block block = blockOf(index);
+			truck = new Truck(block.height, block.width);
+			opened.put(index, truck);
+		}
+		return truck;
+	}
+
+	/**
+	 * Возвращает грузовик без создания: ещё не открытый грузовик заменяется пустым грузовиком его размера.
+	 *
+	 * @param index номер грузовика.
+	 * @return открытый грузовик или пустой грузовик только для чтения.
+	 */
+	@Override
+	public Truck get(int index) {
+		Truck truck = opened.get(index);
+		if (truck != null) {
+			return truck;
+		}
+		Block block = blockOf(index);
+		return emptyViews.computeIfAbsent(((long) block.height << 32) | block.width,
+				key -> Truck.emptyView(block.height, block.width));
+	}
+
+	/**
+	 * Проверяет, открыт ли грузовик.
+	 *
+	 * @param index номер грузовика.
+	 * @return true, если грузовик уже открыт через {@link #open(int)} или добавлен готовым.
+	 */
+	public boolean isOpened(int index) {
+		checkIndex(index);
+		return opened.containsKey(index);
+	}
+
+	/**
+	 * @param index номер грузовика.
+	 * @return высота кузова.
+	 */
+	public int heightOf(int index) {
+		return blockOf(index).height;
+	}
+
+	/**
+	 * @param index номер грузовика.
+	 * @return ширина кузова.
+	 */
+	public int widthOf(int index) {
+		return blockOf(index).width;
+	}
+
+	/**
+	 * Возвращает количество свободных клеток кузова, не открывая грузовик.
+	 *
+	 * @param index номер грузовика.
+	 * @return свободные клетки кузова.
+	 */
+	public int freeCellsOf(int index) {
+		Truck truck = opened.get(index);
+		if (truck != null) {
+			return truck.getFreeCells();
+		}
+		Block block = blockOf(index);
+		return block.height * block.width;
+	}
+
+	/**
+	 * @return блоки одинаковых грузовиков в порядке номеров.
+	 */
+	public List<Block> getBlocks() {
+		return Collections.unmodifiableList(blocks);
+	}
+
+	/**
+	 * @return открытые грузовики по номерам в порядке номеров.
+	 */
+	public NavigableMap<Integer, Truck> getOpened() {
+		return Collections.unmodifiableNavigableMap(opened);
+	}
+
+	/**
+	 * Возвращает номера грузовиков, которых достаточно для погрузки заданного количества посылок в новый парк:
+	 * из каждого блока берутся первые грузовики, но не больше количества посылок. Грузовики блока одинаковы,
+	 * поэтому погрузка в первый подходящий или лучший подходящий грузовик не доходит до остальных грузовиков блока.
+	 *
+	 * @param packages количество посылок.
+	 * @return номера грузовиков в порядке возрастания.
+	 */
+	public int[] candidates(int packages) {
+		int total = 0;
+		for (Block block : blocks) {
+			total += Math.min(block.count, packages);
+		}
+		int[] indexes = new int[total];
+		int next = 0;
+		for (Block block : blocks) {
+			for (int k = 0; k < Math.min(block.count, packages); k++) {
+				indexes[next++] = block.start + k;
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * Находит блок грузовика.
+	 *
+	 * @param index номер грузовика.
+	 * @return блок, в который входит грузовик.
+	 */
+	public Block blockOf(int index) {
+		checkIndex(index);
+		int low = 0;
+		int high = blocks.size() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (blocks.get(middle).start <= index) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return blocks.get(low);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	private Block lastBlock(int height, int width) {
+		Block last = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+		if (last == null || last.height != height || last.width != width) {
+			last = new Block(height, width, size);
+			blocks.add(last);
+		}
+		return last;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Грузовик " + index + " вне парка из " + size);
+		}
+	}
+
+	/**
+	 * Блок одинаковых грузовиков: размер кузова, номер первого грузовика и количество грузовиков.
+	 */
+	@Getter
+	public static final class Block {
+
+		private final int height;
+		private final int width;
+		private final int start;
+		private int count;
+
+		private Block(int height, int width, int start) {
+			this.height = height;
+			this.width = width;
+			this.start = start;
+		}
+
+	}
+
+}
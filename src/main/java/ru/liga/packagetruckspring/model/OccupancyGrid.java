@@ -0,0 +1,143 @@
+package ru.liga.packagetruckspring.model;
+
+import lombok.Getter;
+
+/**
+ * Битовая сетка занятости кузова грузовика.
+ * Каждый ряд хранится как набор 64-битных слов, ряд 0 - нижний ряд кузова.
+ * Проверка и фиксация формы выполняются пословными операциями AND/OR за O(высота формы).
+ */
+@Getter
+public class OccupancyGrid {
+
+	private final int height;
+	private final int width;
+	private final int wordsPerRow;
+	private final long[] cells;
+	private int occupiedCells;
+
+	public OccupancyGrid(int height, int width) {
+		this.height = height;
+		this.width = width;
+		this.wordsPerRow = wordsFor(width);
+		this.cells = new long[height * wordsPerRow];
+	}
+
+	/**
+	 * Возвращает количество 64-битных слов, необходимое для ряда заданной ширины.
+	 *
+	 * @param width ширина ряда.
+	 * @return количество слов.
+	 */
+	public static int wordsFor(int width) {
+		return Math.max(1, (width + 63) >>> 6);
+	}
+
+	/**
+	 * Проверяет, помещается ли форма в сетку в заданной позиции.
+	 *
+	 * @param shape форма посылки.
+	 * @param x левый столбец формы.
+	 * @param y нижний ряд формы.
+	 * @return true, если форма не выходит за границы и не пересекается с занятыми клетками.
+	 */
+	public boolean fits(Shape shape, int x, int y) {
+		if (x < 0 || y < 0 || x + shape.getWidth() > width || y + shape.getHeight() > height) {
+			return false;
+		}
+		int shapeHeight = shape.getHeight();
+		for (int r = 0; r < shapeHeight; r++) {
+			int base = (y + shapeHeight - 1 - r) * wordsPerRow;
+			for (int w = 0; w < shape.getWordsPerRow(); w++) {
+				long mask = shape.getMask(r, w);
+				if (mask == 0) {
+					continue;
+				}
+				int bit = x + (w << 6);
+				int word = base + (bit >>> 6);
+				int offset = bit & 63;
+				if ((cells[word] & (mask << offset)) != 0) {
+					return false;
+				}
+				long carry = offset == 0 ? 0 : mask >>> (64 - offset);
+				if (carry != 0 && (cells[word + 1] & carry) != 0) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Занимает клетки формы в заданной позиции. Позиция должна быть предварительно проверена через {@link #fits}.
+	 *
+	 * @param shape форма посылки.
+	 * @param x левый столбец формы.
+	 * @param y нижний ряд формы.
+	 */
+	public void place(Shape shape, int x, int y) {
+		apply(shape, x, y, true);
+		occupiedCells += shape.getCellCount();
+	}
+
+	/**
+	 * Освобождает клетки формы в заданной позиции.
+	 *
+	 * @param shape форма посылки.
+	 * @param x левый столбец формы.
+	 * @param y нижний ряд формы.
+	 */
+	public void remove(Shape shape, int x, int y) {
+		apply(shape, x, y, false);
+		occupiedCells -= shape.getCellCount();
+	}
+
+	/**
+	 * Проверяет, занята ли клетка.
+	 *
+	 * @param x столбец.
+	 * @param y ряд снизу.
+	 * @return true, если клетка занята.
+	 */
+	public boolean isOccupied(int x, int y) {
+		return (cells[y * wordsPerRow + (x >>> 6)] & (1L << (x & 63))) != 0;
+	}
+
+	/**
+	 * Возвращает количество свободных клеток сетки.
+	 *
+	 * @return количество свободных клеток.
+	 */
+	public int getFreeCells() {
+		return height * width - occupiedCells;
+	}
+
+	private void apply(Shape shape, int x, int y, boolean set) {
+		int shapeHeight = shape.getHeight();
+		for (int r = 0; r < shapeHeight; r++) {
+			int base = (y + shapeHeight - 1 - r) * wordsPerRow;
+			for (int w = 0; w < shape.getWordsPerRow(); w++) {
+				long mask = shape.getMask(r, w);
+				if (mask == 0) {
+					continue;
+				}
+				int bit = x + (w << 6);
+				int word = base + (bit >>> 6);
+				int offset = bit & 63;
+				applyWord(word, mask << offset, set);
+				if (offset != 0 && (mask >>> (64 - offset)) != 0) {
+					applyWord(word + 1, mask >>> (64 - offset), set);
+				}
+			}
+		}
+	}
+
+	private void applyWord(int word, long mask, boolean set) {
+		if (set) {
+			cells[word] |= mask;
+		} else {
+			cells[word] &= ~mask;
+		}
+	}
+
+}
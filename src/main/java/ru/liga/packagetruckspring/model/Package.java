@@ -1,19 +1,38 @@
 package ru.liga.packagetruckspring.model;
 
-import lombok.RequiredArgsConstructor;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
 
 /**
  * Класс, представляющий посылку с заданными параметрами.
+ * Составная посылка, собранная из ряда посылок, помнит, сколько исходных посылок в ней уложено.
  */
 @Getter
-@RequiredArgsConstructor
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
 public class Package {
 
 	private final int height;
 	private final int widthTop;
 	private final int widthBottom;
 	private final String[] pack;
+	private final Shape shape;
+	private final int count;
 
+	public Package(int height, int widthTop, int widthBottom, String[] pack) {
+		this(height, widthTop, widthBottom, pack, Shape.of(pack), 1);
+	}
+
+	public Package(Shape shape) {
+		this(shape, 1);
+	}
+
+	/**
+	 * @param shape форма посылки.
+	 * @param count количество исходных посылок, из которых собрана посылка.
+	 */
+	public Package(Shape shape, int count) {
+		this(shape.getHeight(), shape.getWidthTop(), shape.getWidthBottom(), shape.getRows(), shape, count);
+	}
 
 }
@@ -0,0 +1,164 @@
+package ru.liga.packagetruckspring.model;
+
+import lombok.Getter;
+import ru.liga.packagetruckspring.exception.CustomException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Заказ в виде параллельных примитивных массивов: для каждой посылки хранятся высота, ширина верха и низа
+ * и номер формы в каталоге партии. Одинаковые формы хранятся в каталоге один раз,
+ * поэтому на миллион посылок приходится несколько массивов int вместо миллиона объектов {@link Package}.
+ * Массивы, возвращаемые геттерами, не копируются и не должны изменяться.
+ */
+@Getter
+public class PackageBatch {
+
+	private static final int RADIX_BITS = 16;
+	private static final int RADIX_MASK = (1 << RADIX_BITS) - 1;
+
+	private final Shape[] catalog;
+	private final int[] shapeIds;
+	private final int[] heights;
+	private final int[] widthTops;
+	private final int[] widthBottoms;
+	private final int size;
+
+	private PackageBatch(Shape[] catalog, int[] shapeIds) {
+		this.catalog = catalog;
+		this.shapeIds = shapeIds;
+		this.size = shapeIds.length;
+		this.heights = new int[size];
+		this.widthTops = new int[size];
+		this.widthBottoms = new int[size];
+		for (int i = 0; i < size; i++) {
+			Shape shape = catalog[shapeIds[i]];
+			heights[i] = shape.getHeight();
+			widthTops[i] = shape.getWidthTop();
+			widthBottoms[i] = shape.getWidthBottom();
+		}
+	}
+
+	/**
+	 * Строит партию из форм заказа. Формы сравниваются по ссылке: формы из каталога структур уже общие.
+	 *
+	 * @param shapes формы посылок заказа.
+	 * @return партия посылок.
+	 */
+	public static PackageBatch of(List<Shape> shapes) {
+		Map<Shape, Integer> ids = new IdentityHashMap<>();
+		List<Shape> catalog = new ArrayList<>();
+		int[] shapeIds = new int[shapes.size()];
+		for (int i = 0; i < shapeIds.length; i++) {
+			Shape shape = shapes.get(i);
+			Integer id = ids.get(shape);
+			if (id == null) {
+				id = catalog.size();
+				ids.put(shape, id);
+				catalog.add(shape);
+			}
+			shapeIds[i] = id;
+		}
+		return new PackageBatch(catalog.toArray(new Shape[0]), shapeIds);
+	}
+
+	/**
+	 * Строит партию из строк заказа (форма, количество) без развёртывания заказа в список форм.
+	 *
+	 * @param order строки заказа.
+	 * @return партия посылок.
+	 */
+	public static PackageBatch ofRuns(List<ShapeCount> order) {
+		Map<Shape, Integer> ids = new IdentityHashMap<>();
+		List<Shape> catalog = new ArrayList<>();
+		long total = 0;
+		for (ShapeCount line : order) {
+			total += line.getCount();
+		}
+		if (total > Integer.MAX_VALUE - 8) {
+			throw new CustomException("Слишком большой заказ: " + total + " посылок");
+		}
+		int[] shapeIds = new int[(int) total];
+		int from = 0;
+		for (ShapeCount line : order) {
+			Integer id = ids.get(line.getShape());
+			if (id == null) {
+				id = catalog.size();
+				ids.put(line.getShape(), id);
+				catalog.add(line.getShape());
+			}
+			Arrays.fill(shapeIds, from, from + line.getCount(), id);
+			from += line.getCount();
+		}
+		return new PackageBatch(catalog.toArray(new Shape[0]), shapeIds);
+	}
+
+	/**
+	 * Возвращает форму посылки.
+	 *
+	 * @param index номер посылки.
+	 * @return форма из каталога партии.
+	 */
+	public Shape getShape(int index) {
+		return catalog[shapeIds[index]];
+	}
+
+	/**
+	 * Устойчиво сортирует номера посылок по возрастанию ключа без создания объектов и без сравнений:
+	 * поразрядная сортировка подсчётом по 16 бит смещённого к нулю ключа. Для малых ключей (ширина, высота,
+	 * площадь посылки) достаточно одного прохода с числом корзин, равным размаху ключей.
+	 *
+	 * @param order номера посылок.
+	 * @param key ключ посылки по её номеру.
+	 * @return новый массив номеров в порядке возрастания ключа.
+	 */
+	public static int[] sortByKey(int[] order, IntUnaryOperator key) {
+		int n = order.length;
+		int[] keys = new int[n];
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int i = 0; i < n; i++) {
+			keys[i] = key.applyAsInt(order[i]);
+			min = Math.min(min, keys[i]);
+			max = Math.max(max, keys[i]);
+		}
+		int[] sorted = order.clone();
+		if (n < 2 || min == max) {
+			return sorted;
+		}
+		long range = (long) max - min;
+		for (int i = 0; i < n; i++) {
+			keys[i] -= min;
+		}
+		int[] nextOrder = new int[n];
+		int[] nextKeys = new int[n];
+		for (int shift = 0; shift < 32 && (range >>> shift) != 0; shift += RADIX_BITS) {
+			int buckets = (int) Math.min(RADIX_MASK + 1L, (range >>> shift) + 1);
+			int[] starts = new int[buckets + 1];
+			for (int i = 0; i < n; i++) {
+				starts[((keys[i] >>> shift) & RADIX_MASK) + 1]++;
+			}
+			for (int b = 0; b < buckets; b++) {
+				starts[b + 1] += starts[b];
+			}
+			for (int i = 0; i < n; i++) {
+				int position = starts[(keys[i] >>> shift) & RADIX_MASK]++;
+				nextOrder[position] = sorted[i];
+				nextKeys[position] = keys[i];
+			}
+			int[] swap = sorted;
+			sorted = nextOrder;
+			nextOrder = swap;
+			swap = keys;
+			keys = nextKeys;
+			nextKeys = swap;
+		}
+		return sorted;
+	}
+
+}
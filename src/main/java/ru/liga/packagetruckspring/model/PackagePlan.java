@@ -0,0 +1,84 @@
+package ru.liga.packagetruckspring.model;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * План погрузки партии посылок {@link PackageBatch} в параллельных примитивных массивах: грузовик и позиция каждой посылки,
+ * а также порядок размещения. Посылка, не попавшая ни в один грузовик, имеет номер грузовика -1.
+ * Массивы, возвращаемые геттерами, не копируются и не должны изменяться.
+ */
+@Getter
+public class PackagePlan {
+
+	private final PackageBatch batch;
+	private final int[] truckHeights;
+	private final int[] truckWidths;
+	private final int[] trucks;
+	private final int[] xs;
+	private final int[] ys;
+	private final int[] placementOrder;
+	private int placed;
+
+	public PackagePlan(PackageBatch batch, int[] truckHeights, int[] truckWidths) {
+		this.batch = batch;
+		this.truckHeights = truckHeights;
+		this.truckWidths = truckWidths;
+		this.trucks = new int[batch.getSize()];
+		this.xs = new int[batch.getSize()];
+		this.ys = new int[batch.getSize()];
+		this.placementOrder = new int[batch.getSize()];
+		Arrays.fill(trucks, -1);
+	}
+
+	/**
+	 * Записывает размещение посылки.
+	 *
+	 * @param index номер посылки.
+	 * @param truck номер грузовика.
+	 * @param x левый столбец посылки.
+	 * @param y нижний ряд посылки.
+	 */
+	public void place(int index, int truck, int x, int y) {
+		trucks[index] = truck;
+		xs[index] = x;
+		ys[index] = y;
+		placementOrder[placed++] = index;
+	}
+
+	/**
+	 * Возвращает количество не размещённых посылок.
+	 *
+	 * @return количество посылок без грузовика.
+	 */
+	public int getUnplaced() {
+		return trucks.length - placed;
+	}
+
+	/**
+	 * Группирует размещённые посылки по грузовикам сортировкой подсчётом, сохраняя порядок размещения
+	 * внутри грузовика.
+	 *
+	 * @param offsets массив длиной на 1 больше количества грузовиков, в него записываются границы групп.
+	 * @return номера размещённых посылок: посылки грузовика t занимают позиции с offsets[t] до offsets[t + 1].
+	 */
+	public int[] groupByTruck(int[] offsets) {
+		int truckCount = truckHeights.length;
+		Arrays.fill(offsets, 0);
+		for (int i = 0; i < placed; i++) {
+			offsets[trucks[placementOrder[i]] + 1]++;
+		}
+		for (int t = 0; t < truckCount; t++) {
+			offsets[t + 1] += offsets[t];
+		}
+		int[] byTruck = new int[placed];
+		int[] next = Arrays.copyOf(offsets, truckCount);
+		for (int i = 0; i < placed; i++) {
+			int index = placementOrder[i];
+			byTruck[next[trucks[index]]++] = index;
+		}
+		return byTruck;
+	}
+
+}
@@ -0,0 +1,45 @@
+package ru.liga.packagetruckspring.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Locale;
+
+/**
+ * Режимы погрузки грузовиков.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum PackingMode {
+
+	SIMPLE("S"),
+	COMPLEX("C"),
+	GRID("G"),
+	FFD("FFD"),
+	BFD("BFD"),
+	SKYLINE("K"),
+	OPTIMIZE("O"),
+	PORTFOLIO("P"),
+	EXACT("E");
+
+	private final String alias;
+
+	/**
+	 * Определяет режим погрузки по строке команды.
+	 * Полное имя или короткий псевдоним сравниваются без учёта регистра, иначе действует прежнее правило:
+	 * строка, содержащая "S", означает простой режим, любая другая - комплексный.
+	 *
+	 * @param mode строка режима.
+	 * @return режим погрузки.
+	 */
+	public static PackingMode fromString(String mode) {
+		String normalized = mode.trim().toUpperCase(Locale.ROOT);
+		for (PackingMode packingMode : values()) {
+			if (packingMode.name().equals(normalized) || packingMode.alias.equals(normalized)) {
+				return packingMode;
+			}
+		}
+		return normalized.contains("S") ? SIMPLE : COMPLEX;
+	}
+
+}
@@ -0,0 +1,28 @@
+package ru.liga.packagetruckspring.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Результат погрузки одного задания.
+ * Для режима портфеля дополнительно содержит итоги всех запущенных стратегий,
+ * для точного режима - признак доказанной минимальности количества грузовиков.
+ */
+@Getter
+@AllArgsConstructor
+public class PackingResult {
+
+	private final PackingMode mode;
+	private final List<Truck> trucks;
+	private final int unplaced;
+	private final List<StrategyReport> strategies;
+	private final boolean optimal;
+
+	public PackingResult(PackingMode mode, List<Truck> trucks, int unplaced) {
+		this(mode, trucks, unplaced, Collections.emptyList(), false);
+	}
+
+}
@@ -0,0 +1,18 @@
+package ru.liga.packagetruckspring.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Позиция посылки в кузове грузовика.
+ * Координаты задают левый столбец и нижний ряд формы, ряд 0 - нижний ряд кузова.
+ */
+@Getter
+@RequiredArgsConstructor
+public class Placement {
+
+	private final Package pack;
+	private final int x;
+	private final int y;
+
+}
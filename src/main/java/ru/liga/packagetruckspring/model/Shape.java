@@ -0,0 +1,234 @@
+package ru.liga.packagetruckspring.model;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Битовое представление формы посылки.
+ * Каждая строка формы хранится как набор 64-битных слов, где установленный бит означает занятую клетку.
+ * Для каждого столбца хранится профиль: номер нижней занятой клетки и высота над верхней занятой клеткой,
+ * считая от низа формы. У пустого столбца нижняя клетка равна высоте формы, а верхняя - нулю.
+ * Массивы, возвращаемые геттерами, не копируются и не должны изменяться.
+ */
+@Getter
+public class Shape {
+
+	private final String form;
+	private final String symbol;
+	private final String[] rows;
+	private final long[] rowMasks;
+	private final int height;
+	private final int width;
+	private final int widthTop;
+	private final int widthBottom;
+	private final int wordsPerRow;
+	private final int cellCount;
+	private final int[] columnBottoms;
+	private final int[] columnTops;
+
+	private Shape(String symbol, String[] rows, long[] rowMasks, int width, int wordsPerRow, int cellCount) {
+		this.form = String.join(":", rows);
+		this.symbol = symbol;
+		this.rows = rows;
+		this.rowMasks = rowMasks;
+		this.height = rows.length;
+		this.width = width;
+		this.widthTop = rows[0].length();
+		this.widthBottom = rows[rows.length - 1].length();
+		this.wordsPerRow = wordsPerRow;
+		this.cellCount = cellCount;
+		this.columnBottoms = new int[width];
+		this.columnTops = new int[width];
+		for (int c = 0; c < width; c++) {
+			int bottom = height;
+			int top = 0;
+			for (int r = 0; r < height; r++) {
+				if (c < rows[r].length() && rows[r].charAt(c) != ' ') {
+					bottom = Math.min(bottom, height - 1 - r);
+					top = Math.max(top, height - r);
+				}
+			}
+			columnBottoms[c] = bottom;
+			columnTops[c] = top;
+		}
+	}
+
+	/**
+	 * Компилирует форму из строки формата "строка:строка:строка".
+	 *
+	 * @param form форма посылки, строки разделены двоеточием.
+	 * @param symbol символ посылки.
+	 * @return битовая форма посылки.
+	 */
+	public static Shape compile(String form, String symbol) {
+		return build(form.split(":"), symbol);
+	}
+
+	/**
+	 * Строит битовую форму по строкам посылки. Пробел считается пустой клеткой, любой другой символ - занятой.
+	 * Символом формы считается первый непустой символ.
+	 *
+	 * @param rows строки посылки сверху вниз.
+	 * @return битовая форма посылки.
+	 */
+	public static Shape of(String[] rows) {
+		return build(rows, firstSymbol(rows));
+	}
+
+	/**
+	 * Составляет из нескольких форм одну, выравнивая их по низу. Формы ставятся по очереди слева направо:
+	 * каждая сдвигается влево до упора в уже поставленные формы по каждой строке, поэтому выступы форм
+	 * могут заходить друг под друга, но клетки не пересекаются. Маски строк объединяются сдвигом и побитовым ИЛИ,
+	 * символы посылок сохраняются.
+	 *
+	 * @param parts формы в порядке слева направо.
+	 * @return составная форма.
+	 */
+	public static Shape compose(List<Shape> parts) {
+		int height = 0;
+		for (Shape part : parts) {
+			height = Math.max(height, part.height);
+		}
+		int[] rightmost = new int[height];
+		Arrays.fill(rightmost, -1);
+		int[] offsets = new int[parts.size()];
+		int width = 0;
+		int cellCount = 0;
+		for (int p = 0; p < parts.size(); p++) {
+			Shape part = parts.get(p);
+			int top = height - part.height;
+			int offset = 0;
+			for (int r = 0; r < part.height; r++) {
+				int leftmost = part.leftmost(r);
+				if (leftmost >= 0) {
+					offset = Math.max(offset, rightmost[top + r] + 1 - leftmost);
+				}
+			}
+			for (int r = 0; r < part.height; r++) {
+				int last = part.rightmost(r);
+				if (last >= 0) {
+					rightmost[top + r] = Math.max(rightmost[top + r], offset + last);
+					width = Math.max(width, rightmost[top + r] + 1);
+				}
+			}
+			offsets[p] = offset;
+			cellCount += part.cellCount;
+		}
+
+		int wordsPerRow = OccupancyGrid.wordsFor(width);
+		long[] rowMasks = new long[height * wordsPerRow];
+		char[][] cells = new char[height][];
+		for (int r = 0; r < height; r++) {
+			cells[r] = new char[rightmost[r] + 1];
+			Arrays.fill(cells[r], ' ');
+		}
+		for (int p = 0; p < parts.size(); p++) {
+			Shape part = parts.get(p);
+			int top = height - part.height;
+			int offset = offsets[p];
+			for (int r = 0; r < part.height; r++) {
+				int row = top + r;
+				for (int w = 0; w < part.wordsPerRow; w++) {
+					long mask = part.getMask(r, w);
+					if (mask == 0) {
+						continue;
+					}
+					int bit = (w << 6) + offset;
+					int word = row * wordsPerRow + (bit >>> 6);
+					rowMasks[word] |= mask << (bit & 63);
+					if ((bit & 63) != 0 && (bit >>> 6) + 1 < wordsPerRow) {
+						rowMasks[word + 1] |= mask >>> (64 - (bit & 63));
+					}
+				}
+				String partRow = part.rows[r];
+				for (int c = 0; c < partRow.length(); c++) {
+					if (partRow.charAt(c) != ' ') {
+						cells[row][offset + c] = partRow.charAt(c);
+					}
+				}
+			}
+		}
+		String[] rows = new String[height];
+		for (int r = 0; r < height; r++) {
+			rows[r] = new String(cells[r]);
+		}
+		return new Shape(firstSymbol(rows), rows, rowMasks, width, wordsPerRow, cellCount);
+	}
+
+	/**
+	 * Возвращает номер самого левого занятого столбца строки формы.
+	 *
+	 * @param row номер строки сверху вниз.
+	 * @return столбец или -1, если строка пустая.
+	 */
+	private int leftmost(int row) {
+		for (int w = 0; w < wordsPerRow; w++) {
+			long mask = getMask(row, w);
+			if (mask != 0) {
+				return (w << 6) + Long.numberOfTrailingZeros(mask);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Возвращает номер самого правого занятого столбца строки формы.
+	 *
+	 * @param row номер строки сверху вниз.
+	 * @return столбец или -1, если строка пустая.
+	 */
+	private int rightmost(int row) {
+		for (int w = wordsPerRow - 1; w >= 0; w--) {
+			long mask = getMask(row, w);
+			if (mask != 0) {
+				return (w << 6) + 63 - Long.numberOfLeadingZeros(mask);
+			}
+		}
+		return -1;
+	}
+
+	private static Shape build(String[] rows, String symbol) {
+		int width = 0;
+		for (String row : rows) {
+			width = Math.max(width, row.length());
+		}
+		int wordsPerRow = OccupancyGrid.wordsFor(width);
+		long[] rowMasks = new long[rows.length * wordsPerRow];
+		int cellCount = 0;
+		for (int r = 0; r < rows.length; r++) {
+			String row = rows[r];
+			for (int c = 0; c < row.length(); c++) {
+				if (row.charAt(c) != ' ') {
+					rowMasks[r * wordsPerRow + (c >>> 6)] |= 1L << (c & 63);
+					cellCount++;
+				}
+			}
+		}
+		return new Shape(symbol, rows, rowMasks, width, wordsPerRow, cellCount);
+	}
+
+	private static String firstSymbol(String[] rows) {
+		for (String row : rows) {
+			for (int c = 0; c < row.length(); c++) {
+				if (row.charAt(c) != ' ') {
+					return String.valueOf(row.charAt(c));
+				}
+			}
+		}
+		return " ";
+	}
+
+	/**
+	 * Возвращает слово битовой маски строки формы.
+	 *
+	 * @param row номер строки сверху вниз.
+	 * @param word номер 64-битного слова в строке.
+	 * @return битовая маска занятых клеток.
+	 */
+	public long getMask(int row, int word) {
+		return rowMasks[row * wordsPerRow + word];
+	}
+
+}
@@ -0,0 +1,72 @@
+package ru.liga.packagetruckspring.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Строка заказа: форма посылки и количество одинаковых посылок этой формы.
+ */
+@Getter
+@RequiredArgsConstructor
+public class ShapeCount {
+
+	private final Shape shape;
+	private final int count;
+
+	/**
+	 * Представляет заказ списком форм по одной на посылку, не разворачивая строки заказа:
+	 * список хранит только строки и их границы, форма посылки находится двоичным поиском по границам.
+	 *
+	 * @param order строки заказа.
+	 * @return список форм только для чтения.
+	 */
+	public static List<Shape> expand(List<ShapeCount> order) {
+		return new Expanded(order);
+	}
+
+	private static final class Expanded extends AbstractList<Shape> implements RandomAccess {
+
+		private final Shape[] shapes;
+		private final int[] ends;
+
+		private Expanded(List<ShapeCount> order) {
+			this.shapes = new Shape[order.size()];
+			this.ends = new int[order.size()];
+			int end = 0;
+			for (int i = 0; i < shapes.length; i++) {
+				shapes[i] = order.get(i).getShape();
+				end = Math.addExact(end, order.get(i).getCount());
+				ends[i] = end;
+			}
+		}
+
+		@Override
+		public Shape get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException("Посылка " + index + " вне заказа из " + size());
+			}
+			int low = 0;
+			int high = ends.length - 1;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (ends[middle] > index) {
+					high = middle;
+				} else {
+					low = middle + 1;
+				}
+			}
+			return shapes[low];
+		}
+
+		@Override
+		public int size() {
+			return ends.length == 0 ? 0 : ends[ends.length - 1];
+		}
+
+	}
+
+}
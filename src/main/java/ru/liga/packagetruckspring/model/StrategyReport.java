@@ -0,0 +1,20 @@
+package ru.liga.packagetruckspring.model;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Итог одной стратегии погрузки в режиме портфеля.
+ */
+@Getter
+@Builder
+public class StrategyReport {
+
+	private final PackingMode mode;
+	private final boolean completed;
+	private final int trucksUsed;
+	private final int unplaced;
+	private final double fillRatio;
+	private final long elapsedMillis;
+
+}
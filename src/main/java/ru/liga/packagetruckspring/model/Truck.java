@@ -1,20 +1,124 @@
 package ru.liga.packagetruckspring.model;
 
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Класс, представляющий грузовик, который содержит список пакетов.
+ * Сетка занятости создаётся при первом размещении посылки по координатам. Режимы, которые складывают посылки
+ * в список без координат, сетку не создают, и занятые клетки такого грузовика считаются по списку посылок.
  */
 @Getter
-@RequiredArgsConstructor
 public class Truck {
 
-	private List<Package> packages = new ArrayList<>();
+	private List<Package> packages;
+	private final List<Placement> placements;
 	private final int height;
 	private final int width;
+	@Getter(AccessLevel.NONE)
+	private OccupancyGrid grid;
+	private final boolean view;
+
+	public Truck(int height, int width) {
+		this(height, width, new ArrayList<>(), new ArrayList<>(), false);
+	}
+
+	private Truck(int height, int width, List<Package> packages, List<Placement> placements, boolean view) {
+		this.packages = packages;
+		this.placements = placements;
+		this.height = height;
+		this.width = width;
+		this.view = view;
+	}
+
+	/**
+	 * Создаёт пустой грузовик только для чтения: его размеры и свободные клетки можно проверять, но загрузить его нельзя.
+	 *
+	 * @param height высота кузова.
+	 * @param width ширина кузова.
+	 * @return пустой неизменяемый грузовик.
+	 */
+	public static Truck emptyView(int height, int width) {
+		return new Truck(height, width, Collections.emptyList(), Collections.emptyList(), true);
+	}
+
+	/**
+	 * Возвращает сетку занятости для погрузки по координатам, при первом обращении создавая её.
+	 *
+	 * @return сетка занятости кузова.
+	 * @throws UnsupportedOperationException если грузовик только для чтения или загружен списком без координат.
+	 */
+	public OccupancyGrid getGrid() {
+		if (grid == null) {
+			if (view || !packages.isEmpty()) {
+				throw new UnsupportedOperationException("Грузовик " + height + "x" + width + " загружен без сетки занятости");
+			}
+			grid = new OccupancyGrid(height, width);
+		}
+		return grid;
+	}
+
+	/**
+	 * Возвращает количество занятых клеток: по сетке, если посылки размещены по координатам, иначе по списку посылок.
+	 *
+	 * @return занятые клетки кузова.
+	 */
+	public int getOccupiedCells() {
+		if (grid != null) {
+			return grid.getOccupiedCells();
+		}
+		int cells = 0;
+		for (Package aPackage : packages) {
+			cells += aPackage.getShape().getCellCount();
+		}
+		return cells;
+	}
+
+	/**
+	 * @return свободные клетки кузова.
+	 */
+	public int getFreeCells() {
+		return height * width - getOccupiedCells();
+	}
+
+	/**
+	 * Размещает посылку в кузове по заданным координатам и занимает её клетки в сетке.
+	 *
+	 * @param pack посылка для размещения.
+	 * @param x левый столбец посылки.
+	 * @param y нижний ряд посылки.
+	 * @throws UnsupportedOperationException если грузовик только для чтения.
+	 */
+	public void place(Package pack, int x, int y) {
+		if (view) {
+			throw new UnsupportedOperationException("Пустой грузовик " + height + "x" + width + " только для чтения");
+		}
+		getGrid().place(pack.getShape(), x, y);
+		placements.add(new Placement(pack, x, y));
+		packages.add(pack);
+	}
+
+	/**
+	 * Убирает посылку из кузова и освобождает её клетки в сетке.
+	 *
+	 * @param pack размещённая посылка.
+	 * @return false, если посылка не размещена в этом грузовике.
+	 */
+	public boolean remove(Package pack) {
+		for (int i = placements.size() - 1; i >= 0; i--) {
+			Placement placement = placements.get(i);
+			if (placement.getPack() == pack) {
+				grid.remove(pack.getShape(), placement.getX(), placement.getY());
+				placements.remove(i);
+				packages.removeIf(aPackage -> aPackage == pack);
+				return true;
+			}
+		}
+		return false;
+	}
 
 }
@@ -1,5 +1,6 @@
 package ru.liga.packagetruckspring.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -10,6 +11,8 @@ import java.util.List;
 
 /**
  * Модель для работы с грузовиками и посылками в JSON-результата погрузки.
+ * Для грузовиков с размещёнными по координатам посылками записываются размеры кузова и координаты посылок,
+ * для остальных эти поля отсутствуют.
  */
 @Getter
 @Builder
@@ -26,7 +29,10 @@ public class TruckPackageJson {
 	@Builder
 	@NoArgsConstructor
 	@AllArgsConstructor
+	@JsonInclude(JsonInclude.Include.NON_NULL)
 	public static class Truck {
+		private Integer height;
+		private Integer width;
 		@JsonProperty("packages")
 		private List<Order> orders;
 	}
@@ -38,9 +44,12 @@ public class TruckPackageJson {
 	@Builder
 	@NoArgsConstructor
 	@AllArgsConstructor
+	@JsonInclude(JsonInclude.Include.NON_NULL)
 	public static class Order {
 		@JsonProperty("package")
 		private String order;
+		private Integer x;
+		private Integer y;
 	}
 
 }
@@ -0,0 +1,20 @@
+package ru.liga.packagetruckspring.model;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Итог разгрузки файла результата погрузки: количество посылок каждого вида во всех грузовиках.
+ */
+@Getter
+@Builder
+public class UnloadReport {
+
+	private final int trucks;
+	private final long packages;
+	private final long unrecognized;
+	private final Map<String, Long> totals;
+
+}
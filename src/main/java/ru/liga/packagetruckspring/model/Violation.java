@@ -0,0 +1,41 @@
+package ru.liga.packagetruckspring.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Нарушение, найденное при проверке плана погрузки.
+ * Грузовики нумеруются с 1, ряд 0 - нижний ряд кузова. Для нарушений, не привязанных к грузовику или клетке,
+ * соответствующие координаты равны {@link #NONE}.
+ */
+@Getter
+@RequiredArgsConstructor
+public class Violation {
+
+	public static final int NONE = -1;
+
+	private final int truck;
+	private final int row;
+	private final int column;
+	private final String reason;
+
+	/**
+	 * @return описание нарушения с координатами, например "грузовик 2, ряд 0, столбец 3: ...".
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		if (truck != NONE) {
+			sb.append("грузовик ").append(truck);
+			if (row != NONE) {
+				sb.append(", ряд ").append(row);
+			}
+			if (column != NONE) {
+				sb.append(", столбец ").append(column);
+			}
+			sb.append(": ");
+		}
+		return sb.append(reason).toString();
+	}
+
+}
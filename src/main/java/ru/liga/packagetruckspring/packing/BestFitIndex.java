@@ -0,0 +1,50 @@
+package ru.liga.packagetruckspring.packing;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Индекс "лучший подходящий": контейнеры сгруппированы по свободной ёмкости в {@link TreeMap}.
+ * Поиск возвращает контейнер с наименьшей достаточной ёмкостью, при равенстве - с меньшим номером, за O(log n).
+ */
+public class BestFitIndex implements CapacityIndex {
+
+	private final TreeMap<Integer, TreeSet<Integer>> binsByCapacity = new TreeMap<>();
+	private int[] capacities = new int[16];
+	private int size;
+
+	@Override
+	public int add(int capacity) {
+		if (size == capacities.length) {
+			capacities = Arrays.copyOf(capacities, size * 2);
+		}
+		capacities[size] = capacity;
+		binsByCapacity.computeIfAbsent(capacity, key -> new TreeSet<>()).add(size);
+		return size++;
+	}
+
+	@Override
+	public int find(int demand) {
+		Map.Entry<Integer, TreeSet<Integer>> entry = binsByCapacity.ceilingEntry(demand);
+		return entry == null ? -1 : entry.getValue().first();
+	}
+
+	@Override
+	public void update(int bin, int capacity) {
+		TreeSet<Integer> bins = binsByCapacity.get(capacities[bin]);
+		bins.remove(bin);
+		if (bins.isEmpty()) {
+			binsByCapacity.remove(capacities[bin]);
+		}
+		capacities[bin] = capacity;
+		binsByCapacity.computeIfAbsent(capacity, key -> new TreeSet<>()).add(bin);
+	}
+
+	@Override
+	public int capacity(int bin) {
+		return capacities[bin];
+	}
+
+}
@@ -0,0 +1,321 @@
+package ru.liga.packagetruckspring.packing;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import ru.liga.packagetruckspring.model.Fleet;
+import ru.liga.packagetruckspring.model.OccupancyGrid;
+import ru.liga.packagetruckspring.model.Shape;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Точный решатель методом ветвей и границ: ищет распределение посылок по грузовикам с минимальным
+ * количеством грузовиков. Посылки перебираются по убыванию числа клеток, каждая кладётся в уже открытый
+ * грузовик или в новый. Ветка отсекается, если нижняя граница не лучше найденного плана: граница берётся
+ * как наибольшая из границы по площади и границы по количеству крупных посылок, никакие две из которых
+ * не помещаются в один грузовик.
+ * Размещаемость набора форм в кузове проверяется перебором позиций по сетке занятости и запоминается
+ * по мультимножеству форм, посещённые частичные состояния запоминаются по остатку посылок и содержимому
+ * открытых грузовиков. Поиск ограничен количеством узлов и временем, при исчерпании лимита
+ * возвращается лучший найденный план без доказательства оптимальности.
+ * Перебираются только грузовики {@link Fleet#candidates(int)}: каждая посылка занимает не больше одного грузовика,
+ * поэтому из блока одинаковых кузовов достаточно взять столько грузовиков, сколько посылок.
+ */
+@Slf4j
+public class BranchAndBoundSolver {
+
+	private static final int MAX_VISITED_STATES = 1_000_000;
+
+	private final int[] fleetIndexes;
+	private final int[] truckHeights;
+	private final int[] truckWidths;
+	private final int[] areasDescending;
+	private final Shape[] shapes;
+	private final int[] shapeIds;
+	private final int[] suffixCells;
+	private final int largeCount;
+	private final long nodeLimit;
+
+	private final Map<String, int[]> layouts = new HashMap<>();
+	private final Set<String> visited = new HashSet<>();
+	private final List<List<Integer>> contents = new ArrayList<>();
+	private final int[] contentCells;
+
+	private long deadline;
+	private long nodes;
+	private boolean aborted;
+	private int bestUsed;
+	private List<List<Integer>> best;
+
+	/**
+	 * @param fleet парк грузовиков, используются только размеры кузовов.
+	 * @param shapes формы посылок, упорядоченные по убыванию числа клеток.
+	 * @param nodeLimit предельное количество узлов перебора.
+	 */
+	public BranchAndBoundSolver(Fleet fleet, List<Shape> shapes, long nodeLimit) {
+		this.fleetIndexes = fleet.candidates(shapes.size());
+		this.truckHeights = new int[fleetIndexes.length];
+		this.truckWidths = new int[fleetIndexes.length];
+		this.areasDescending = new int[fleetIndexes.length];
+		for (int t = 0; t < fleetIndexes.length; t++) {
+			truckHeights[t] = fleet.heightOf(fleetIndexes[t]);
+			truckWidths[t] = fleet.widthOf(fleetIndexes[t]);
+			areasDescending[t] = -truckHeights[t] * truckWidths[t];
+			contents.add(new ArrayList<>());
+		}
+		Arrays.sort(areasDescending);
+		for (int t = 0; t < areasDescending.length; t++) {
+			areasDescending[t] = -areasDescending[t];
+		}
+		this.contentCells = new int[fleetIndexes.length];
+		this.shapes = shapes.toArray(new Shape[0]);
+		this.shapeIds = new int[this.shapes.length];
+		Map<String, Integer> ids = new HashMap<>();
+		for (int i = 0; i < this.shapes.length; i++) {
+			shapeIds[i] = ids.computeIfAbsent(this.shapes[i].getForm(), form -> ids.size());
+		}
+		this.suffixCells = new int[this.shapes.length + 1];
+		for (int i = this.shapes.length - 1; i >= 0; i--) {
+			suffixCells[i] = suffixCells[i + 1] + this.shapes[i].getCellCount();
+		}
+		int maxArea = areasDescending.length > 0 ? areasDescending[0] : 0;
+		int large = 0;
+		while (large < this.shapes.length && 2 * this.shapes[large].getCellCount() > maxArea) {
+			large++;
+		}
+		this.largeCount = large;
+		this.nodeLimit = nodeLimit;
+	}
+
+	/**
+	 * Решение: номер грузовика в парке и позиция каждой посылки.
+	 */
+	@Getter
+	public static class Solution {
+
+		private final int[] trucks;
+		private final int[] xs;
+		private final int[] ys;
+		private final int trucksUsed;
+		private final boolean proven;
+
+		private Solution(int[] trucks, int[] xs, int[] ys, int trucksUsed, boolean proven) {
+			this.trucks = trucks;
+			this.xs = xs;
+			this.ys = ys;
+			this.trucksUsed = trucksUsed;
+			this.proven = proven;
+		}
+
+	}
+
+	/**
+	 * Ищет распределение всех посылок с минимальным количеством грузовиков.
+	 *
+	 * @param timeLimit предельное время поиска.
+	 * @return лучшее найденное решение или null, если все посылки разместить не удалось.
+	 */
+	public Solution solve(Duration timeLimit) {
+		deadline = System.nanoTime() + timeLimit.toNanos();
+		bestUsed = truckHeights.length + 1;
+		search(0, 0);
+		boolean proven = !aborted;
+		log.info("Точный поиск: {} узлов, грузовиков {}, оптимальность {}", nodes,
+				best == null ? "-" : bestUsed, proven ? "доказана" : "не доказана");
+		if (best == null) {
+			return null;
+		}
+		int[] trucks = new int[shapes.length];
+		int[] xs = new int[shapes.length];
+		int[] ys = new int[shapes.length];
+		for (int t = 0; t < best.size(); t++) {
+			List<Integer> packed = best.get(t);
+			if (packed.isEmpty()) {
+				continue;
+			}
+			int[] layout = layouts.get(key(t, packed));
+			for (int k = 0; k < packed.size(); k++) {
+				int index = packed.get(k);
+				trucks[index] = fleetIndexes[t];
+				xs[index] = layout[k] % truckWidths[t];
+				ys[index] = layout[k] / truckWidths[t];
+			}
+		}
+		return new Solution(trucks, xs, ys, bestUsed, proven);
+	}
+
+	private void search(int index, int used) {
+		if (aborted || used >= bestUsed) {
+			return;
+		}
+		if (index == shapes.length) {
+			bestUsed = used;
+			best = new ArrayList<>();
+			for (List<Integer> packed : contents) {
+				best.add(new ArrayList<>(packed));
+			}
+			return;
+		}
+		if (used + extraTrucksBound(index) >= bestUsed || !visited(index)) {
+			return;
+		}
+
+		Set<String> triedTrucks = new HashSet<>();
+		for (int t = 0; t < contents.size(); t++) {
+			List<Integer> packed = contents.get(t);
+			if (packed.isEmpty() || !triedTrucks.add(key(t, packed))) {
+				continue;
+			}
+			packed.add(index);
+			if (layout(t, packed) != null) {
+				contentCells[t] += shapes[index].getCellCount();
+				search(index + 1, used);
+				contentCells[t] -= shapes[index].getCellCount();
+			}
+			packed.remove(packed.size() - 1);
+		}
+
+		Set<String> openedSizes = new HashSet<>();
+		for (int t = 0; t < contents.size() && used + 1 < bestUsed; t++) {
+			List<Integer> packed = contents.get(t);
+			if (!packed.isEmpty() || !openedSizes.add(truckHeights[t] + "x" + truckWidths[t])) {
+				continue;
+			}
+			packed.add(index);
+			if (layout(t, packed) != null) {
+				contentCells[t] += shapes[index].getCellCount();
+				search(index + 1, used + 1);
+				contentCells[t] -= shapes[index].getCellCount();
+			}
+			packed.remove(packed.size() - 1);
+		}
+	}
+
+	/**
+	 * Нижняя граница количества дополнительных грузовиков, наибольшая из двух.
+	 * По площади: клетки оставшихся посылок, не помещающиеся в свободное место открытых грузовиков,
+	 * укладываются в самые большие кузова. По количеству: крупная посылка занимает больше половины
+	 * самого большого кузова, поэтому в грузовике помещается не больше одной крупной посылки, и каждой
+	 * оставшейся крупной посылке, не попавшей в открытый грузовик, нужен свой новый грузовик.
+	 */
+	private int extraTrucksBound(int index) {
+		long free = 0;
+		int openForLarge = 0;
+		int smallestLarge = largeCount > 0 ? shapes[largeCount - 1].getCellCount() : 0;
+		for (int t = 0; t < contents.size(); t++) {
+			if (!contents.get(t).isEmpty()) {
+				int truckFree = truckHeights[t] * truckWidths[t] - contentCells[t];
+				free += truckFree;
+				if (truckFree >= smallestLarge) {
+					openForLarge++;
+				}
+			}
+		}
+		long rest = suffixCells[index] - free;
+		int extra = 0;
+		for (int t = 0; t < areasDescending.length && rest > 0; t++) {
+			rest -= areasDescending[t];
+			extra++;
+		}
+		if (rest > 0) {
+			return Integer.MAX_VALUE / 2;
+		}
+		int largeRest = Math.max(0, largeCount - index);
+		return Math.max(extra, largeRest - openForLarge);
+	}
+
+	/**
+	 * Отмечает частичное состояние как посещённое.
+	 *
+	 * @return false, если состояние уже посещалось.
+	 */
+	private boolean visited(int index) {
+		if (++nodes > nodeLimit || System.nanoTime() > deadline || Thread.currentThread().isInterrupted()) {
+			aborted = true;
+			return false;
+		}
+		List<String> trucks = new ArrayList<>();
+		for (int t = 0; t < contents.size(); t++) {
+			if (!contents.get(t).isEmpty()) {
+				trucks.add(key(t, contents.get(t)));
+			}
+		}
+		trucks.sort(null);
+		String state = index + "|" + String.join("|", trucks);
+		if (visited.size() >= MAX_VISITED_STATES) {
+			return !visited.contains(state);
+		}
+		return visited.add(state);
+	}
+
+	/**
+	 * Ищет расположение набора посылок в кузове, результат запоминается по размеру кузова и мультимножеству форм.
+	 *
+	 * @return позиции посылок (y * ширина + x) или null, если набор не помещается.
+	 */
+	private int[] layout(int truck, List<Integer> packed) {
+		String key = key(truck, packed);
+		if (layouts.containsKey(key)) {
+			return layouts.get(key);
+		}
+		int height = truckHeights[truck];
+		int width = truckWidths[truck];
+		int cells = 0;
+		for (int index : packed) {
+			cells += shapes[index].getCellCount();
+		}
+		int[] positions = new int[packed.size()];
+		boolean found = cells <= height * width
+				&& place(new OccupancyGrid(height, width), packed, 0, positions);
+		int[] layout = found ? positions : null;
+		if (!aborted) {
+			layouts.put(key, layout);
+		}
+		return layout;
+	}
+
+	private boolean place(OccupancyGrid grid, List<Integer> packed, int k, int[] positions) {
+		if (k == packed.size()) {
+			return true;
+		}
+		if (++nodes > nodeLimit) {
+			aborted = true;
+			return false;
+		}
+		int index = packed.get(k);
+		Shape shape = shapes[index];
+		int width = grid.getWidth();
+		boolean sameAsPrevious = k > 0 && shapeIds[packed.get(k - 1)] == shapeIds[index];
+		int start = sameAsPrevious ? positions[k - 1] + 1 : 0;
+		for (int position = start; position < grid.getHeight() * width && !aborted; position++) {
+			int x = position % width;
+			int y = position / width;
+			if (x + shape.getWidth() > width || y + shape.getHeight() > grid.getHeight() || !grid.fits(shape, x, y)) {
+				continue;
+			}
+			grid.place(shape, x, y);
+			positions[k] = position;
+			if (place(grid, packed, k + 1, positions)) {
+				return true;
+			}
+			grid.remove(shape, x, y);
+		}
+		return false;
+	}
+
+	private String key(int truck, List<Integer> packed) {
+		StringBuilder sb = new StringBuilder().append(truckHeights[truck]).append('x').append(truckWidths[truck]);
+		for (int index : packed) {
+			sb.append(',').append(shapeIds[index]);
+		}
+		return sb.toString();
+	}
+
+}
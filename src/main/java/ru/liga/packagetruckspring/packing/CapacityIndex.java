@@ -0,0 +1,51 @@
+package ru.liga.packagetruckspring.packing;
+
+/**
+ * Индекс ёмкостей контейнеров (рядов или грузовиков) для выбора контейнера под посылку за O(log n).
+ * Контейнеры нумеруются в порядке добавления.
+ */
+public interface CapacityIndex {
+
+	/**
+	 * Добавляет контейнер с заданной свободной ёмкостью.
+	 *
+	 * @param capacity свободная ёмкость.
+	 * @return номер контейнера.
+	 */
+	int add(int capacity);
+
+	/**
+	 * Ищет контейнер, в котором свободно не меньше заданной ёмкости.
+	 *
+	 * @param demand требуемая ёмкость.
+	 * @return номер контейнера или -1, если подходящего контейнера нет.
+	 */
+	int find(int demand);
+
+	/**
+	 * Изменяет свободную ёмкость контейнера.
+	 *
+	 * @param bin номер контейнера.
+	 * @param capacity новая свободная ёмкость.
+	 */
+	void update(int bin, int capacity);
+
+	/**
+	 * Возвращает свободную ёмкость контейнера.
+	 *
+	 * @param bin номер контейнера.
+	 * @return свободная ёмкость.
+	 */
+	int capacity(int bin);
+
+	/**
+	 * Создаёт индекс для выбранной стратегии.
+	 *
+	 * @param bestFit true - лучший подходящий контейнер, false - первый подходящий.
+	 * @return пустой индекс.
+	 */
+	static CapacityIndex create(boolean bestFit) {
+		return bestFit ? new BestFitIndex() : new FirstFitIndex();
+	}
+
+}
@@ -0,0 +1,73 @@
+package ru.liga.packagetruckspring.packing;
+
+import java.util.Arrays;
+
+/**
+ * Индекс "первый подходящий": дерево отрезков максимумов свободной ёмкости.
+ * Поиск спускается к самому левому листу с достаточной ёмкостью за O(log n).
+ */
+public class FirstFitIndex implements CapacityIndex {
+
+	private static final int EMPTY = -1;
+
+	private int leaves = 16;
+	private int size;
+	private int[] tree = newTree(leaves);
+
+	@Override
+	public int add(int capacity) {
+		if (size == leaves) {
+			grow();
+		}
+		set(size, capacity);
+		return size++;
+	}
+
+	@Override
+	public int find(int demand) {
+		if (size == 0 || tree[1] < demand) {
+			return -1;
+		}
+		int node = 1;
+		while (node < leaves) {
+			node = tree[2 * node] >= demand ? 2 * node : 2 * node + 1;
+		}
+		return node - leaves;
+	}
+
+	@Override
+	public void update(int bin, int capacity) {
+		set(bin, capacity);
+	}
+
+	@Override
+	public int capacity(int bin) {
+		return tree[leaves + bin];
+	}
+
+	private void set(int bin, int capacity) {
+		int node = leaves + bin;
+		tree[node] = capacity;
+		for (node >>= 1; node > 0; node >>= 1) {
+			tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+		}
+	}
+
+	private void grow() {
+		int[] old = tree;
+		int oldLeaves = leaves;
+		leaves *= 2;
+		tree = newTree(leaves);
+		System.arraycopy(old, oldLeaves, tree, leaves, oldLeaves);
+		for (int node = leaves - 1; node > 0; node--) {
+			tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+		}
+	}
+
+	private static int[] newTree(int leaves) {
+		int[] tree = new int[2 * leaves];
+		Arrays.fill(tree, EMPTY);
+		return tree;
+	}
+
+}
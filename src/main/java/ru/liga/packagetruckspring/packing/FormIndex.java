@@ -0,0 +1,80 @@
+package ru.liga.packagetruckspring.packing;
+
+import java.util.List;
+
+/**
+ * Хэш-индекс форм посылок с открытой адресацией.
+ * Поиск выполняется прямо по участку массива символов, поэтому форму, прочитанную потоковым парсером,
+ * можно распознать без создания строки. Индекс неизменяем и потокобезопасен.
+ */
+public class FormIndex {
+
+	private final char[][] keys;
+	private final int[] hashes;
+	private final int[] values;
+	private final int mask;
+
+	/**
+	 * @param forms формы посылок, номер формы в списке - её значение в индексе. Для повторяющейся формы
+	 *              сохраняется первый номер.
+	 */
+	public FormIndex(List<String> forms) {
+		int capacity = Integer.highestOneBit(Math.max(2, forms.size()) * 2 - 1) << 1;
+		this.keys = new char[capacity][];
+		this.hashes = new int[capacity];
+		this.values = new int[capacity];
+		this.mask = capacity - 1;
+		for (int i = 0; i < forms.size(); i++) {
+			char[] key = forms.get(i).toCharArray();
+			int hash = hash(key, 0, key.length);
+			int slot = hash & mask;
+			while (keys[slot] != null && !(hashes[slot] == hash && equals(keys[slot], key, 0, key.length))) {
+				slot = (slot + 1) & mask;
+			}
+			if (keys[slot] == null) {
+				keys[slot] = key;
+				hashes[slot] = hash;
+				values[slot] = i;
+			}
+		}
+	}
+
+	/**
+	 * Ищет форму.
+	 *
+	 * @param text массив символов.
+	 * @param offset начало формы в массиве.
+	 * @param length длина формы.
+	 * @return номер формы или -1, если формы нет в индексе.
+	 */
+	public int find(char[] text, int offset, int length) {
+		int hash = hash(text, offset, length);
+		for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && equals(keys[slot], text, offset, length)) {
+				return values[slot];
+			}
+		}
+		return -1;
+	}
+
+	private static int hash(char[] text, int offset, int length) {
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + text[i];
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean equals(char[] key, char[] text, int offset, int length) {
+		if (key.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (key[i] != text[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,233 @@
+package ru.liga.packagetruckspring.packing;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.liga.packagetruckspring.exception.CustomException;
+import ru.liga.packagetruckspring.model.Fleet;
+import ru.liga.packagetruckspring.model.Shape;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Оптимизатор порядка погрузки локальным поиском с поздним принятием (late acceptance hill climbing).
+ * Порядок посылок декодируется в план погрузкой по верхнему профилю в первый подходящий грузовик,
+ * поэтому выбор грузовика для посылки определяется порядком. Независимые перезапуски выполняются
+ * параллельно в общем для всех оптимизаций {@link ForkJoinPool} размером в количество процессоров,
+ * по истечении бюджета времени возвращается лучший найденный порядок. Одновременные оптимизации делят
+ * потоки пула, поэтому их перезапуски не создают потоков сверх количества процессоров.
+ * Декодирование идёт только по грузовикам {@link Fleet#candidates(int)}: первый подходящий грузовик нового парка
+ * не выходит за них, поэтому план совпадает с погрузкой по всему парку.
+ */
+@Slf4j
+public class LateAcceptanceOptimizer {
+
+	private static final int HISTORY_LENGTH = 50;
+	private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+	private final int[] truckHeights;
+	private final int[] truckWidths;
+	private final Shape[] shapes;
+	private final int lowerBound;
+
+	/**
+	 * @param fleet парк грузовиков, используются только размеры кузовов.
+	 * @param shapes формы посылок в начальном порядке.
+	 */
+	public LateAcceptanceOptimizer(Fleet fleet, List<Shape> shapes) {
+		int[] candidates = fleet.candidates(shapes.size());
+		this.truckHeights = new int[candidates.length];
+		this.truckWidths = new int[candidates.length];
+		for (int t = 0; t < candidates.length; t++) {
+			truckHeights[t] = fleet.heightOf(candidates[t]);
+			truckWidths[t] = fleet.widthOf(candidates[t]);
+		}
+		this.shapes = shapes.toArray(new Shape[0]);
+		this.lowerBound = areaLowerBound();
+	}
+
+	/**
+	 * Ищет порядок погрузки с наименьшим количеством грузовиков.
+	 *
+	 * @param budget бюджет времени.
+	 * @param threads количество перезапусков, параллельно выполняется не больше количества процессоров.
+	 * @return лучший найденный порядок: номера посылок в начальном списке.
+	 */
+	public int[] optimize(Duration budget, int threads) {
+		long deadline = System.nanoTime() + budget.toNanos();
+		Thread caller = Thread.currentThread();
+		List<Callable<Result>> restarts = new ArrayList<>(threads);
+		for (int i = 0; i < threads; i++) {
+			int restart = i;
+			restarts.add(() -> search(restart, deadline, caller));
+		}
+		try {
+			Result best = null;
+			for (Future<Result> future : POOL.invokeAll(restarts)) {
+				Result result = future.get();
+				if (best == null || result.cost < best.cost) {
+					best = result;
+				}
+			}
+			log.info("Оптимизация завершена: лучшая оценка {}, нижняя граница {} грузовиков", best.cost, lowerBound);
+			return best.order;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CustomException("Оптимизация погрузки прервана", e);
+		} catch (ExecutionException e) {
+			throw new CustomException("Ошибка оптимизации погрузки", e.getCause());
+		}
+	}
+
+	/**
+	 * Один перезапуск локального поиска. Нулевой перезапуск начинает с исходного порядка,
+	 * остальные - с исходного порядка, возмущённого случайными перестановками.
+	 * Поиск останавливается по истечении бюджета или при прерывании вызвавшего оптимизацию потока.
+	 */
+	private Result search(int restart, long deadline, Thread caller) {
+		Random random = new Random(restart);
+		int n = shapes.length;
+		int[] current = new int[n];
+		for (int i = 0; i < n; i++) {
+			current[i] = i;
+		}
+		if (restart > 0) {
+			for (int k = 0; k < Math.max(1, n / 10); k++) {
+				swap(current, random.nextInt(n), random.nextInt(n));
+			}
+		}
+		double currentCost = evaluate(current);
+		int[] best = current.clone();
+		double bestCost = currentCost;
+		double[] history = new double[HISTORY_LENGTH];
+		Arrays.fill(history, currentCost);
+
+		for (long iteration = 0; n > 1 && System.nanoTime() < deadline && bestCost >= lowerBound && !caller.isInterrupted();
+				iteration++) {
+			int from = random.nextInt(n);
+			int to = random.nextInt(n);
+			boolean swapMove = random.nextBoolean();
+			if (swapMove) {
+				swap(current, from, to);
+			} else {
+				move(current, from, to);
+			}
+			double candidateCost = evaluate(current);
+			int slot = (int) (iteration % HISTORY_LENGTH);
+			if (candidateCost <= history[slot] || candidateCost <= currentCost) {
+				currentCost = candidateCost;
+				if (currentCost < bestCost) {
+					bestCost = currentCost;
+					best = current.clone();
+				}
+			} else if (swapMove) {
+				swap(current, from, to);
+			} else {
+				move(current, to, from);
+			}
+			history[slot] = currentCost;
+		}
+		return new Result(best, bestCost);
+	}
+
+	/**
+	 * Декодирует порядок в план и оценивает его. Каждая неразмещённая посылка дороже любого количества грузовиков,
+	 * каждый грузовик дороже любой разницы в заполненности, а при равном количестве грузовиков
+	 * лучше план с более плотно заполненными кузовами.
+	 *
+	 * @param order порядок посылок.
+	 * @return оценка плана, меньше - лучше.
+	 */
+	private double evaluate(int[] order) {
+		Skyline[] skylines = new Skyline[truckHeights.length];
+		int[] usedCells = new int[truckHeights.length];
+		int unplaced = 0;
+		for (int index : order) {
+			Shape shape = shapes[index];
+			boolean placed = false;
+			for (int t = 0; t < skylines.length && !placed; t++) {
+				if (truckHeights[t] * truckWidths[t] - usedCells[t] < shape.getCellCount()) {
+					continue;
+				}
+				if (skylines[t] == null) {
+					skylines[t] = new Skyline(truckHeights[t], truckWidths[t]);
+				}
+				int[] position = skylines[t].findPosition(shape);
+				if (position != null) {
+					skylines[t].place(shape, position[0], position[1]);
+					usedCells[t] += shape.getCellCount();
+					placed = true;
+				}
+			}
+			if (!placed) {
+				unplaced++;
+			}
+		}
+		int used = 0;
+		double fillSquares = 0;
+		for (int t = 0; t < skylines.length; t++) {
+			if (usedCells[t] > 0) {
+				used++;
+				double fill = (double) usedCells[t] / (truckHeights[t] * truckWidths[t]);
+				fillSquares += fill * fill;
+			}
+		}
+		return (double) unplaced * (skylines.length + 1) + used - fillSquares / (used + 1);
+	}
+
+	/**
+	 * Нижняя граница количества грузовиков по площади: сколько самых больших кузовов нужно, чтобы вместить все клетки.
+	 */
+	private int areaLowerBound() {
+		long cells = 0;
+		for (Shape shape : shapes) {
+			cells += shape.getCellCount();
+		}
+		int[] areas = new int[truckHeights.length];
+		for (int t = 0; t < areas.length; t++) {
+			areas[t] = truckHeights[t] * truckWidths[t];
+		}
+		Arrays.sort(areas);
+		int bound = 0;
+		for (int t = areas.length - 1; t >= 0 && cells > 0; t--) {
+			cells -= areas[t];
+			bound++;
+		}
+		return bound;
+	}
+
+	private static void swap(int[] order, int i, int j) {
+		int tmp = order[i];
+		order[i] = order[j];
+		order[j] = tmp;
+	}
+
+	private static void move(int[] order, int from, int to) {
+		int value = order[from];
+		if (from < to) {
+			System.arraycopy(order, from + 1, order, from, to - from);
+		} else {
+			System.arraycopy(order, to, order, to + 1, from - to);
+		}
+		order[to] = value;
+	}
+
+	private static final class Result {
+
+		private final int[] order;
+		private final double cost;
+
+		private Result(int[] order, double cost) {
+			this.order = order;
+			this.cost = cost;
+		}
+
+	}
+
+}
@@ -0,0 +1,176 @@
+package ru.liga.packagetruckspring.packing;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import ru.liga.packagetruckspring.exception.CustomException;
+import ru.liga.packagetruckspring.model.PackageBatch;
+import ru.liga.packagetruckspring.model.Shape;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringJoiner;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Порядок посылок перед погрузкой: последовательность ключей, каждый следующий различает посылки
+ * с равными предыдущими ключами. Сортировка устойчивая и поразрядная: ключи применяются от последнего
+ * к первому сортировкой подсчётом {@link PackageBatch#sortByKey}, без компаратора и упаковки ключей.
+ * Посылки с равными всеми ключами сохраняют исходный порядок.
+ */
+public final class PackageOrder {
+
+	/**
+	 * Порядок по умолчанию: по возрастанию ширины нижней части.
+	 */
+	public static final PackageOrder DEFAULT = new PackageOrder(List.of(Key.WIDTH_BOTTOM));
+
+	private final List<Key> keys;
+
+	private PackageOrder(List<Key> keys) {
+		this.keys = keys;
+	}
+
+	/**
+	 * Создаёт порядок из ключей.
+	 *
+	 * @param keys ключи в порядке убывания значимости.
+	 * @return порядок посылок.
+	 */
+	public static PackageOrder of(Key... keys) {
+		return new PackageOrder(List.of(keys));
+	}
+
+	/**
+	 * Разбирает порядок из строки команды: имена ключей через запятую, например "height-desc,width-desc".
+	 * Пустая строка означает порядок по умолчанию.
+	 *
+	 * @param spec описание порядка.
+	 * @return порядок посылок.
+	 * @throws CustomException если ключ не известен.
+	 */
+	public static PackageOrder parse(String spec) {
+		if (spec == null || spec.isBlank()) {
+			return DEFAULT;
+		}
+		List<Key> keys = new ArrayList<>();
+		for (String name : spec.split(",")) {
+			keys.add(Key.fromString(name));
+		}
+		return new PackageOrder(List.copyOf(keys));
+	}
+
+	/**
+	 * Упорядочивает номера посылок.
+	 *
+	 * @param size количество посылок.
+	 * @param shapes форма посылки по её номеру.
+	 * @return номера посылок в порядке погрузки.
+	 */
+	public int[] sort(int size, IntFunction<Shape> shapes) {
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		for (int k = keys.size() - 1; k >= 0; k--) {
+			Key key = keys.get(k);
+			int[] values = new int[size];
+			for (int i = 0; i < size; i++) {
+				values[i] = key.value(shapes.apply(i));
+			}
+			order = PackageBatch.sortByKey(order, i -> values[i]);
+		}
+		return order;
+	}
+
+	/**
+	 * Упорядочивает список посылок.
+	 *
+	 * @param items посылки.
+	 * @param shape форма посылки.
+	 * @param <T> тип посылки.
+	 * @return новый список в порядке погрузки.
+	 */
+	public <T> List<T> sort(List<T> items, Function<T, Shape> shape) {
+		List<Shape> shapes = new ArrayList<>(items.size());
+		for (T item : items) {
+			shapes.add(shape.apply(item));
+		}
+		List<T> sorted = new ArrayList<>(items.size());
+		for (int index : sort(shapes.size(), shapes::get)) {
+			sorted.add(items.get(index));
+		}
+		return sorted;
+	}
+
+	/**
+	 * @return описание порядка в формате {@link #parse(String)}.
+	 */
+	@Override
+	public String toString() {
+		StringJoiner spec = new StringJoiner(",");
+		for (Key key : keys) {
+			spec.add(key.getAlias());
+		}
+		return spec.toString();
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof PackageOrder && keys.equals(((PackageOrder) other).keys);
+	}
+
+	@Override
+	public int hashCode() {
+		return keys.hashCode();
+	}
+
+	/**
+	 * Ключ сортировки посылок. Площадь - число занятых клеток формы.
+	 */
+	@Getter
+	@RequiredArgsConstructor
+	public enum Key {
+
+		WIDTH_BOTTOM("width-bottom", false, Shape::getWidthBottom),
+		WIDTH_DESC("width-desc", true, Shape::getWidth),
+		HEIGHT_DESC("height-desc", true, Shape::getHeight),
+		AREA_DESC("area-desc", true, Shape::getCellCount);
+
+		private final String alias;
+		private final boolean descending;
+		private final ToIntFunction<Shape> extractor;
+
+		/**
+		 * Значение ключа, по возрастанию которого сортируются посылки.
+		 *
+		 * @param shape форма посылки.
+		 * @return значение ключа, для убывающих ключей - с обратным знаком.
+		 */
+		public int value(Shape shape) {
+			int value = extractor.applyAsInt(shape);
+			return descending ? -value : value;
+		}
+
+		/**
+		 * Определяет ключ по имени без учёта регистра: псевдоним "width-desc" или имя константы.
+		 *
+		 * @param name имя ключа.
+		 * @return ключ сортировки.
+		 * @throws CustomException если ключ не известен.
+		 */
+		public static Key fromString(String name) {
+			String normalized = name.trim().toLowerCase(Locale.ROOT);
+			for (Key key : values()) {
+				if (key.alias.equals(normalized) || key.name().toLowerCase(Locale.ROOT).equals(normalized)) {
+					return key;
+				}
+			}
+			throw new CustomException("Неизвестный ключ сортировки: " + name.trim());
+		}
+
+	}
+
+}
@@ -0,0 +1,142 @@
+package ru.liga.packagetruckspring.packing;
+
+import ru.liga.packagetruckspring.model.OccupancyGrid;
+import ru.liga.packagetruckspring.model.Shape;
+import ru.liga.packagetruckspring.model.Violation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Проверка плана погрузки за один проход по посылкам.
+ * Клетки кузова отмечаются в битовой сетке по 64 клетки в слове: выход за границы проверяется по размерам формы,
+ * пересечение - пословным AND с уже отмеченными клетками. Сетка переиспользуется между грузовиками.
+ * Посылки без координат проверяются как стопка: каждая занимает свои ряды кузова снизу вверх.
+ * Экземпляр не потокобезопасен.
+ */
+public class PlanVerifier {
+
+	private final List<Violation> violations = new ArrayList<>();
+	private long[] cells = new long[0];
+	private int truck;
+	private int height;
+	private int width;
+	private int wordsPerRow;
+	private int stackedRows;
+
+	/**
+	 * Начинает проверку очередного грузовика.
+	 *
+	 * @param truck номер грузовика, начиная с 1.
+	 * @param height высота кузова.
+	 * @param width ширина кузова.
+	 */
+	public void beginTruck(int truck, int height, int width) {
+		endTruck();
+		this.truck = truck;
+		this.height = height;
+		this.width = width;
+		this.wordsPerRow = OccupancyGrid.wordsFor(width);
+		int words = height * wordsPerRow;
+		if (cells.length < words) {
+			cells = new long[words];
+		} else {
+			Arrays.fill(cells, 0, words, 0L);
+		}
+		stackedRows = 0;
+	}
+
+	/**
+	 * Отмечает посылку, размещённую по координатам.
+	 *
+	 * @param shape форма посылки.
+	 * @param x левый столбец формы.
+	 * @param y нижний ряд формы.
+	 */
+	public void place(Shape shape, int x, int y) {
+		if (x < 0 || y < 0 || x + shape.getWidth() > width || y + shape.getHeight() > height) {
+			add(y, x, "посылка " + shape.getForm() + " выходит за границы кузова "
+					+ height + "x" + width);
+			return;
+		}
+		int shapeHeight = shape.getHeight();
+		for (int r = 0; r < shapeHeight; r++) {
+			int row = y + shapeHeight - 1 - r;
+			int base = row * wordsPerRow;
+			int overlap = -1;
+			for (int w = 0; w < shape.getWordsPerRow(); w++) {
+				long mask = shape.getMask(r, w);
+				if (mask == 0) {
+					continue;
+				}
+				int bit = x + (w << 6);
+				int word = base + (bit >>> 6);
+				int offset = bit & 63;
+				overlap = mark(overlap, word, mask << offset, base);
+				if (offset != 0 && (mask >>> (64 - offset)) != 0) {
+					overlap = mark(overlap, word + 1, mask >>> (64 - offset), base);
+				}
+			}
+			if (overlap >= 0) {
+				add(row, overlap, "посылка " + shape.getForm() + " пересекается с другой посылкой");
+			}
+		}
+	}
+
+	/**
+	 * Отмечает посылку без координат: она ставится над предыдущими посылками стопки.
+	 *
+	 * @param shape форма посылки.
+	 */
+	public void stack(Shape shape) {
+		if (shape.getWidth() > width) {
+			add(stackedRows, width, "посылка " + shape.getForm() + " шире кузова " + height + "x" + width);
+		}
+		stackedRows += shape.getHeight();
+	}
+
+	/**
+	 * Добавляет нарушение, не привязанное к клетке кузова.
+	 *
+	 * @param truck номер грузовика или {@link Violation#NONE}.
+	 * @param reason описание нарушения.
+	 */
+	public void report(int truck, String reason) {
+		violations.add(new Violation(truck, Violation.NONE, Violation.NONE, reason));
+	}
+
+	/**
+	 * Завершает проверку текущего грузовика и возвращает найденные нарушения.
+	 *
+	 * @return нарушения в порядке обнаружения.
+	 */
+	public List<Violation> getViolations() {
+		endTruck();
+		return violations;
+	}
+
+	private void endTruck() {
+		if (stackedRows > height) {
+			add(height, Violation.NONE, "посылки занимают " + stackedRows + " рядов при высоте кузова " + height);
+		}
+		stackedRows = 0;
+	}
+
+	/**
+	 * Отмечает клетки слова и возвращает столбец первой клетки пересечения в ряду.
+	 */
+	private int mark(int overlap, int word, long mask, int base) {
+		long collision = cells[word] & mask;
+		cells[word] |= mask;
+		if (overlap < 0 && collision != 0) {
+			return ((word - base) << 6) + Long.numberOfTrailingZeros(collision);
+		}
+		return overlap;
+	}
+
+	private void add(int row, int column, String reason) {
+		violations.add(new Violation(truck, row, column, reason));
+	}
+
+}
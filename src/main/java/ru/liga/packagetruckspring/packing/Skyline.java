@@ -0,0 +1,76 @@
+package ru.liga.packagetruckspring.packing;
+
+import ru.liga.packagetruckspring.model.Shape;
+
+/**
+ * Верхний профиль кузова: для каждого столбца хранится высота над самой верхней занятой клеткой.
+ * Форма опускается в столбцах до профиля, поэтому проверка позиции стоит O(ширины формы),
+ * а поиск самой низкой позиции - O(ширины кузова * ширины формы).
+ */
+public class Skyline {
+
+	private final int height;
+	private final int[] tops;
+
+	public Skyline(int height, int width) {
+		this.height = height;
+		this.tops = new int[width];
+	}
+
+	/**
+	 * Вычисляет самый нижний ряд, на который можно опустить форму в заданном столбце.
+	 *
+	 * @param shape форма посылки.
+	 * @param x левый столбец формы.
+	 * @return нижний ряд формы.
+	 */
+	public int lowestY(Shape shape, int x) {
+		int[] bottoms = shape.getColumnBottoms();
+		int y = 0;
+		for (int c = 0; c < shape.getWidth(); c++) {
+			if (bottoms[c] < shape.getHeight()) {
+				y = Math.max(y, tops[x + c] - bottoms[c]);
+			}
+		}
+		return y;
+	}
+
+	/**
+	 * Ищет самую нижнюю, затем самую левую позицию для формы.
+	 *
+	 * @param shape форма посылки.
+	 * @return пара {x, y} или null, если форма не помещается.
+	 */
+	public int[] findPosition(Shape shape) {
+		int bestX = -1;
+		int bestY = height;
+		for (int x = 0; x + shape.getWidth() <= tops.length; x++) {
+			int y = lowestY(shape, x);
+			if (y < bestY) {
+				bestX = x;
+				bestY = y;
+			}
+		}
+		if (bestX < 0 || bestY + shape.getHeight() > height) {
+			return null;
+		}
+		return new int[]{bestX, bestY};
+	}
+
+	/**
+	 * Поднимает профиль над размещённой формой.
+	 *
+	 * @param shape форма посылки.
+	 * @param x левый столбец формы.
+	 * @param y нижний ряд формы.
+	 */
+	public void place(Shape shape, int x, int y) {
+		int[] columnTops = shape.getColumnTops();
+		for (int c = 0; c < shape.getWidth(); c++) {
+			if (columnTops[c] > 0) {
+				tops[x + c] = Math.max(tops[x + c], y + columnTops[c]);
+			}
+		}
+	}
+
+}
@@ -1,14 +1,13 @@
 package ru.liga.packagetruckspring.repository;
 
-import org.springframework.stereotype.Repository;
 import ru.liga.packagetruckspring.model.Package;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Репозиторий для хранения и управления пакетами.
+ * Создаётся на каждую сессию погрузки в {@link ru.liga.packagetruckspring.service.PackingSession}.
  */
-@Repository
 public class PackageRepository {
 
     private final List<Package> packages = new ArrayList<>();
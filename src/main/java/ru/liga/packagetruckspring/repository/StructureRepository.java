@@ -1,19 +1,36 @@
 package ru.liga.packagetruckspring.repository;
 
 import org.springframework.stereotype.Repository;
+import ru.liga.packagetruckspring.exception.CustomException;
+import ru.liga.packagetruckspring.model.Shape;
+import ru.liga.packagetruckspring.model.ShapeCount;
 import ru.liga.packagetruckspring.model.Structure;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Репозиторий для управления структурой пакетов из json.
+ * Для каждой структуры хранится заранее скомпилированная форма, которая пересобирается при изменении структуры.
+ * Поиск по имени выполняется через хэш-индекс по имени в нижнем регистре, поэтому имена структур уникальны без учёта регистра.
+ * Доступ защищён блокировкой чтения-записи: параллельные задания погрузки читают каталог, пока команды изменения ждут.
  */
 @Repository
 public class StructureRepository {
 
     private final List<Structure> structures = new ArrayList<>();
+    private final Map<String, Structure> nameIndex = new HashMap<>();
+    private final Map<Structure, Shape> shapes = new IdentityHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private StructureRepository previous;
 
     /**
      * Возвращает список всех структур.
@@ -21,7 +38,12 @@ public class StructureRepository {
      * @return список всех структур.
      */
     public List<Structure> findAll() {
-        return new ArrayList<>(structures);
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(structures);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -31,9 +53,97 @@ public class StructureRepository {
      * @return Optional, содержащий найденную структуру, или пустой Optional, если структура не найдена.
      */
     public Optional<Structure> findByName(String name) {
-        return structures.stream()
-                .filter(structure -> structure.getName().equalsIgnoreCase(name))
-                .findFirst();
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(getByName(name));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает скомпилированную форму структуры.
+     *
+     * @param structure структура из репозитория.
+     * @return Optional, содержащий форму, или пустой Optional, если структура не хранится в репозитории или не имеет формы.
+     */
+    public Optional<Shape> findShape(Structure structure) {
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(shapes.get(structure));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает скомпилированные формы всех структур в порядке их добавления.
+     * Формы неизменяемы, поэтому результат можно использовать после изменения каталога.
+     *
+     * @return список форм.
+     */
+    public List<Shape> findAllShapes() {
+        lock.readLock().lock();
+        try {
+            List<Shape> result = new ArrayList<>(structures.size());
+            for (Structure structure : structures) {
+                Shape shape = shapes.get(structure);
+                if (shape != null) {
+                    result.add(shape);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает скомпилированные формы структур с заданными именами за одно обращение к каталогу.
+     * Неизвестные имена пропускаются.
+     *
+     * @param names имена структур.
+     * @return список форм в порядке имён.
+     */
+    public List<Shape> findShapesByNames(String[] names) {
+        lock.readLock().lock();
+        try {
+            List<Shape> result = new ArrayList<>(names.length);
+            for (String name : names) {
+                Structure structure = getByName(name);
+                Shape shape = structure == null ? null : shapes.get(structure);
+                if (shape != null) {
+                    result.add(shape);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает строки заказа для заданных имён и количеств. Неизвестные имена пропускаются.
+     *
+     * @param names имена структур.
+     * @param counts количество посылок для каждого имени.
+     * @return строки заказа в порядке имён, одинаковые имена ссылаются на один экземпляр формы.
+     */
+    public List<ShapeCount> findShapeCounts(String[] names, int[] counts) {
+        lock.readLock().lock();
+        try {
+            List<ShapeCount> result = new ArrayList<>(names.length);
+            for (int i = 0; i < names.length; i++) {
+                Structure structure = getByName(names[i]);
+                Shape shape = structure == null ? null : shapes.get(structure);
+                if (shape != null) {
+                    result.add(new ShapeCount(shape, counts[i]));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -42,14 +152,30 @@ public class StructureRepository {
      * @param name имя структуры для обновления.
      * @param updatedStructure обновлённые данные для структуры.
      * @return обновлённая структура, или пустой Optional, если структура не найдена.
+     * @throws CustomException если новое имя уже занято другой структурой.
      */
     public Optional<Structure> update(String name, Structure updatedStructure) {
-        return findByName(name).map(originalStructure -> {
+        lock.writeLock().lock();
+        try {
+            Structure originalStructure = getByName(name);
+            if (originalStructure == null) {
+                return Optional.empty();
+            }
+            String newKey = normalize(updatedStructure.getName());
+            Structure owner = nameIndex.get(newKey);
+            if (owner != null && owner != originalStructure) {
+                throw duplicateName(updatedStructure.getName());
+            }
+            nameIndex.remove(normalize(originalStructure.getName()));
+            nameIndex.put(newKey, originalStructure);
             originalStructure.setName(updatedStructure.getName());
             originalStructure.setForm(updatedStructure.getForm());
             originalStructure.setSymbol(updatedStructure.getSymbol());
-            return originalStructure;
-        });
+            compile(originalStructure);
+            return Optional.of(originalStructure);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -57,10 +183,22 @@ public class StructureRepository {
      *
      * @param structure структура для сохранения.
      * @return сохранённая структура.
+     * @throws CustomException если структура с таким именем уже существует.
      */
     public Structure save(Structure structure) {
-        structures.add(structure);
-        return structure;
+        lock.writeLock().lock();
+        try {
+            String key = normalize(structure.getName());
+            if (nameIndex.containsKey(key)) {
+                throw duplicateName(structure.getName());
+            }
+            nameIndex.put(key, structure);
+            structures.add(structure);
+            compile(structure);
+            return structure;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -68,17 +206,126 @@ public class StructureRepository {
      *
      * @param structures список структур для сохранения.
      * @return сохраненный список структур.
+     * @throws CustomException если имя хотя бы одной структуры уже занято, в этом случае репозиторий не изменяется.
      */
     public List<Structure> saveAll(List<Structure> structures) {
-        this.structures.addAll(structures);
-        return new ArrayList<>(this.structures);
+        lock.writeLock().lock();
+        try {
+            Map<String, Structure> added = new HashMap<>();
+            for (Structure structure : structures) {
+                String key = normalize(structure.getName());
+                if (nameIndex.containsKey(key) || added.put(key, structure) != null) {
+                    throw duplicateName(structure.getName());
+                }
+            }
+            nameIndex.putAll(added);
+            this.structures.addAll(structures);
+            structures.forEach(this::compile);
+            return new ArrayList<>(this.structures);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Создаёт пустой промежуточный репозиторий для перезагрузки каталога.
+     * Структура, у которой имя, форма и символ совпадают со структурой этого репозитория, получает её уже
+     * скомпилированную форму, поэтому на время перезагрузки новые формы компилируются только для изменённых структур.
+     *
+     * @return промежуточный репозиторий.
+     */
+    public StructureRepository staging() {
+        StructureRepository staging = new StructureRepository();
+        staging.previous = this;
+        return staging;
+    }
+
+    /**
+     * Заменяет содержимое репозитория содержимым другого репозитория вместе с уже скомпилированными формами.
+     *
+     * @param source репозиторий с новыми структурами.
+     */
+    public void replaceWith(StructureRepository source) {
+        lock.writeLock().lock();
+        source.lock.readLock().lock();
+        try {
+            structures.clear();
+            nameIndex.clear();
+            shapes.clear();
+            structures.addAll(source.structures);
+            nameIndex.putAll(source.nameIndex);
+            shapes.putAll(source.shapes);
+        } finally {
+            source.lock.readLock().unlock();
+            lock.writeLock().unlock();
+        }
     }
 
     /**
      * Очищает все структуры из репозитория.
      */
     public void clear() {
-        this.structures.clear();
+        lock.writeLock().lock();
+        try {
+            this.structures.clear();
+            this.nameIndex.clear();
+            this.shapes.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Structure getByName(String name) {
+        return name == null ? null : nameIndex.get(normalize(name));
+    }
+
+    /**
+     * Приводит имя структуры к ключу индекса.
+     *
+     * @param name имя структуры.
+     * @return ключ индекса.
+     * @throws CustomException если имя не задано.
+     */
+    private static String normalize(String name) {
+        if (name == null) {
+            throw new CustomException("Не задано имя структуры");
+        }
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static CustomException duplicateName(String name) {
+        return new CustomException("Структура с именем " + name + " уже существует");
+    }
+
+    /**
+     * Компилирует форму структуры и сохраняет её в кэше, заменяя прежнюю.
+     *
+     * @param structure структура для компиляции.
+     */
+    private void compile(Structure structure) {
+        if (structure.getForm() == null || structure.getForm().isEmpty()) {
+            shapes.remove(structure);
+        } else {
+            Shape shape = previous == null ? null : previous.findSameShape(structure);
+            shapes.put(structure, shape != null ? shape : Shape.compile(structure.getForm(), structure.getSymbol()));
+        }
+    }
+
+    /**
+     * Возвращает скомпилированную форму структуры с тем же именем, формой и символом.
+     *
+     * @param structure структура другого репозитория.
+     * @return форма или null, если такой структуры нет.
+     */
+    private Shape findSameShape(Structure structure) {
+        lock.readLock().lock();
+        try {
+            Structure same = nameIndex.get(normalize(structure.getName()));
+            return same != null && structure.getForm().equals(same.getForm())
+                    && Objects.equals(structure.getSymbol(), same.getSymbol()) ? shapes.get(same) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
 }
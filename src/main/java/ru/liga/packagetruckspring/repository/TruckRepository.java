@@ -1,26 +1,25 @@
 package ru.liga.packagetruckspring.repository;
 
-import org.springframework.stereotype.Repository;
+import ru.liga.packagetruckspring.model.Fleet;
 import ru.liga.packagetruckspring.model.Truck;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * Репозиторий для управления грузовиками.
+ * Создаётся на каждую сессию погрузки в {@link ru.liga.packagetruckspring.service.PackingSession}.
+ * Грузовики хранятся в {@link Fleet}: блоки одинаковых грузовиков создаются по мере загрузки.
  */
-@Repository
 public class TruckRepository {
 
-    private final List<Truck> trucks = new ArrayList<>();
+    private Fleet fleet = new Fleet();
 
     /**
      * Возвращает список всех грузовиков.
+     * Парк не копируется: грузовики для загрузки открываются через {@link Fleet#open(int)}.
      *
-     * @return список всех грузовиков.
+     * @return парк всех грузовиков.
      */
-    public List<Truck> findAll() {
-        return new ArrayList<>(trucks);
+    public Fleet findAll() {
+        return fleet;
     }
 
     /**
@@ -30,15 +29,26 @@ public class TruckRepository {
      * @return сохранённый грузовик.
      */
     public Truck save(Truck truck) {
-        trucks.add(truck);
+        fleet.addTruck(truck);
         return truck;
     }
 
+    /**
+     * Добавляет блок одинаковых грузовиков, которые будут созданы при первой загрузке.
+     *
+     * @param height высота кузова.
+     * @param width ширина кузова.
+     * @param count количество грузовиков.
+     */
+    public void saveType(int height, int width, int count) {
+        fleet.addType(height, width, count);
+    }
+
     /**
      * Очищает все грузовики из репозитория.
      */
     public void clear() {
-        this.trucks.clear();
+        this.fleet = new Fleet();
     }
 
 }
@@ -0,0 +1,161 @@
+package ru.liga.packagetruckspring.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.liga.packagetruckspring.exception.CustomException;
+import ru.liga.packagetruckspring.model.BatchOrder;
+import ru.liga.packagetruckspring.model.BatchReport;
+import ru.liga.packagetruckspring.model.PackingMode;
+import ru.liga.packagetruckspring.model.PackingResult;
+import ru.liga.packagetruckspring.model.Shape;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сервис пакетной погрузки: независимые заказы выполняются параллельно на ограниченном пуле потоков,
+ * результат каждого заказа сохраняется в отдельный json.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BatchService {
+
+	private final StructureService structureService;
+	private final PackingService packingService;
+	private final TruckService truckService;
+	private final FileService fileService;
+
+	/**
+	 * Выполняет погрузку всех заказов.
+	 *
+	 * @param orders заказы для погрузки.
+	 * @param outputDir каталог для результатов.
+	 * @param threads количество потоков, 0 означает количество доступных процессоров.
+	 * @return итог пакетной погрузки.
+	 * @throws CustomException если у двух заказов совпадает файл результата.
+	 */
+	public BatchReport packBatch(List<BatchOrder> orders, String outputDir, int threads) {
+		File directory = new File(outputDir);
+		List<File> files = resultFiles(orders, directory);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new CustomException("Не удалось создать каталог " + outputDir);
+		}
+		int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		log.info("Пакетная погрузка {} заказов в {} потоков", orders.size(), poolSize);
+
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+		long start = System.nanoTime();
+		List<Future<Long>> futures = new ArrayList<>(orders.size());
+		for (int i = 0; i < orders.size(); i++) {
+			BatchOrder order = orders.get(i);
+			File file = files.get(i);
+			futures.add(executor.submit(() -> packOrder(order, file)));
+		}
+
+		long[] latencies = new long[futures.size()];
+		int completed = 0;
+		int failed = 0;
+		try {
+			for (Future<Long> future : futures) {
+				try {
+					latencies[completed] = future.get();
+					completed++;
+				} catch (ExecutionException e) {
+					failed++;
+					log.error("Ошибка погрузки заказа", e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CustomException("Пакетная погрузка прервана", e);
+		} finally {
+			executor.shutdownNow();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		long[] done = Arrays.copyOf(latencies, completed);
+		Arrays.sort(done);
+		return BatchReport.builder()
+				.orders(orders.size())
+				.failed(failed)
+				.elapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsed))
+				.ordersPerSecond(elapsed > 0 ? completed * 1e9 / elapsed : 0)
+				.p50Millis(percentile(done, 50))
+				.p90Millis(percentile(done, 90))
+				.p99Millis(percentile(done, 99))
+				.maxMillis(done.length > 0 ? done[done.length - 1] / 1e6 : 0)
+				.build();
+	}
+
+	/**
+	 * Назначает каждому заказу файл результата до начала погрузки.
+	 * Недопустимые в имени файла символы идентификатора заменяются на "_", имена сравниваются без учёта регистра,
+	 * поэтому заказы, которые записали бы результат в один файл, отклоняются вместе со всей партией.
+	 *
+	 * @param orders заказы для погрузки.
+	 * @param directory каталог для результатов.
+	 * @return файлы результатов в порядке заказов.
+	 * @throws CustomException если у двух заказов совпадает файл результата.
+	 */
+	private static List<File> resultFiles(List<BatchOrder> orders, File directory) {
+		Map<String, String> owners = new HashMap<>();
+		List<File> files = new ArrayList<>(orders.size());
+		for (int i = 0; i < orders.size(); i++) {
+			String orderId = orders.get(i).getId() != null ? orders.get(i).getId() : "order-" + (i + 1);
+			String fileName = orderId.replaceAll("[^\\w.-]", "_") + ".json";
+			String owner = owners.putIfAbsent(fileName.toLowerCase(Locale.ROOT), orderId);
+			if (owner != null) {
+				throw new CustomException("Заказы " + owner + " и " + orderId + " сохраняются в один файл " + fileName);
+			}
+			files.add(new File(directory, fileName));
+		}
+		return files;
+	}
+
+	/**
+	 * Выполняет погрузку одного заказа и сохраняет результат.
+	 *
+	 * @param order заказ.
+	 * @param file файл для результата.
+	 * @return время обработки заказа в наносекундах.
+	 */
+	private long packOrder(BatchOrder order, File file) {
+		long start = System.nanoTime();
+		String listName = order.getListName() == null ? "" : order.getListName();
+		List<Shape> shapes = listName.isEmpty()
+				? structureService.getAllShapes()
+				: structureService.getShapesForName(listName);
+		PackingMode mode = PackingMode.fromString(order.getMode() == null ? "" : order.getMode());
+		PackingResult result = packingService.pack(mode, shapes, order.getSize());
+		fileService.writeJsonFile(file.getPath(), writer -> truckService.writeJsonForTruck(result.getTrucks(), writer));
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Вычисляет перцентиль методом ближайшего ранга.
+	 *
+	 * @param sorted отсортированные задержки в наносекундах.
+	 * @param percent перцентиль.
+	 * @return значение перцентиля в миллисекундах, 0 для пустого массива.
+	 */
+	public static double percentile(long[] sorted, int percent) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)] / 1e6;
+	}
+
+}
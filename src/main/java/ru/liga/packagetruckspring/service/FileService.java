@@ -1,5 +1,8 @@
 package ru.liga.packagetruckspring.service;
 
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
@@ -7,11 +10,18 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.liga.packagetruckspring.exception.CustomException;
+import ru.liga.packagetruckspring.model.BatchOrder;
 import ru.liga.packagetruckspring.model.Structure;
+import ru.liga.packagetruckspring.model.TruckPackageJson;
 
 import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Сервис для работы с файлами, включая чтение и запись данных.
@@ -23,40 +33,340 @@ public class FileService {
 
 	@Value("${file.json.result}")
 	private String filResultName;
+	@Value("${file.json.progress-step:100000}")
+	private int progressStep;
 	private final ObjectMapper objectMapper;
 
 	/**
-	 * Читает текстовый файл и возвращает его содержимое в виде массива строк.
+	 * Потоково читает файл структур и передаёт их по одной в обработчик, не собирая весь файл в памяти.
+	 * Каждая структура проверяется до передачи, ошибка сообщает номер записи и её позицию в файле.
 	 *
 	 * @param filePath путь до файла.
-	 * @return список строк, содержащих содержимое посылок.
+	 * @param consumer обработчик прочитанных структур.
+	 * @return количество прочитанных структур.
 	 */
-	public List<Structure> readFileData(String filePath) {
-		log.info("Чтение файла {}", filePath);
-		List<Structure> structures;
+	public int streamFileData(String filePath, Consumer<Structure> consumer) {
+		log.info("Потоковое чтение файла {}", filePath);
+		int count = 0;
+		try (JsonParser parser = objectMapper.getFactory().createParser(new File(filePath))) {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				throw invalidEntry(count, parser.getTokenLocation(), "ожидается массив структур");
+			}
+			while (parser.nextToken() == JsonToken.START_OBJECT) {
+				JsonLocation location = parser.getTokenLocation();
+				Structure structure = objectMapper.readValue(parser, Structure.class);
+				validateStructure(structure, count, location);
+				try {
+					consumer.accept(structure);
+				} catch (CustomException e) {
+					throw invalidEntry(count, location, e.getMessage());
+				}
+				count++;
+				if (progressStep > 0 && count % progressStep == 0) {
+					log.info("Загружено структур: {}", count);
+				}
+			}
+			if (parser.currentToken() != JsonToken.END_ARRAY) {
+				throw invalidEntry(count, parser.getTokenLocation(), "ожидается объект структуры");
+			}
+		} catch (IOException e) {
+			log.error("Ошибка чтения файла {}", filePath, e);
+			throw new CustomException("Ошибка чтения файла", e);
+		}
+		log.info("Загружено структур: {}", count);
+		return count;
+	}
+
+	/**
+	 * Проверяет, что у структуры заданы имя, форма и символ.
+	 *
+	 * @param structure структура для проверки.
+	 * @param index номер записи в файле.
+	 * @param location позиция записи в файле.
+	 */
+	private void validateStructure(Structure structure, int index, JsonLocation location) {
+		if (isBlank(structure.getName())) {
+			throw invalidEntry(index, location, "не задано имя");
+		}
+		if (isBlank(structure.getForm())) {
+			throw invalidEntry(index, location, "не задана форма");
+		}
+		if (isBlank(structure.getSymbol())) {
+			throw invalidEntry(index, location, "не задан символ");
+		}
+	}
+
+	private static boolean isBlank(String value) {
+		return value == null || value.isBlank();
+	}
+
+	private static CustomException invalidEntry(int index, JsonLocation location, String reason) {
+		String message = String.format("Некорректная структура №%d (строка %d, столбец %d): %s",
+				index + 1, location.getLineNr(), location.getColumnNr(), reason);
+		log.error(message);
+		return new CustomException(message);
+	}
+
+	/**
+	 * Потоково читает файл результата погрузки и передаёт грузовики по одному в обработчик,
+	 * не собирая весь файл в памяти.
+	 *
+	 * @param filePath путь до файла.
+	 * @param consumer обработчик прочитанных грузовиков.
+	 * @return количество прочитанных грузовиков.
+	 */
+	public int streamResultTrucks(String filePath, Consumer<TruckPackageJson.Truck> consumer) {
+		log.info("Потоковое чтение результата погрузки {}", filePath);
+		try (JsonParser parser = objectMapper.getFactory().createParser(new File(filePath))) {
+			return readResultTrucks(parser,
+					truckParser -> consumer.accept(objectMapper.readValue(truckParser, TruckPackageJson.Truck.class)));
+		} catch (IOException e) {
+			log.error("Ошибка чтения файла {}", filePath, e);
+			throw new CustomException("Ошибка чтения файла", e);
+		}
+	}
+
+	/**
+	 * Потоково читает файл результата погрузки, отображённый в память, и передаёт формы посылок в обработчик
+	 * прямо из буфера парсера, не создавая строк и объектов грузовиков. Файл отображается частями,
+	 * поэтому размер файла не ограничен размером кучи.
+	 *
+	 * @param filePath путь до файла.
+	 * @param listener обработчик посылок и грузовиков.
+	 * @return количество прочитанных грузовиков.
+	 */
+	public int streamResultPackages(String filePath, ResultListener listener) {
+		log.info("Чтение результата погрузки {} через отображение в память", filePath);
+		try (JsonParser parser = objectMapper.getFactory().createParser(new MappedInputStream(Path.of(filePath)))) {
+			return readResultTrucks(parser, truckParser -> {
+				readResultTruck(truckParser, listener);
+				listener.onTruckEnd();
+			});
+		} catch (IOException e) {
+			log.error("Ошибка чтения файла {}", filePath, e);
+			throw new CustomException("Ошибка чтения файла", e);
+		}
+	}
+
+	/**
+	 * Проходит верхний уровень результата погрузки: находит массив "trucks" и передаёт каждый грузовик в обработчик,
+	 * остальные поля пропускает.
+	 *
+	 * @param parser парсер в начале документа.
+	 * @param truckReader обработчик грузовика, вызывается на начале объекта и должен дочитать его до конца.
+	 * @return количество прочитанных грузовиков.
+	 */
+	private int readResultTrucks(JsonParser parser, TruckReader truckReader) throws IOException {
+		int count = 0;
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw invalidResult(parser.getTokenLocation(), "ожидается объект результата");
+		}
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			boolean trucks = "trucks".equals(parser.getCurrentName());
+			JsonToken value = parser.nextToken();
+			if (!trucks) {
+				parser.skipChildren();
+				continue;
+			}
+			if (value != JsonToken.START_ARRAY) {
+				throw invalidResult(parser.getTokenLocation(), "ожидается массив грузовиков");
+			}
+			while (parser.nextToken() == JsonToken.START_OBJECT) {
+				truckReader.read(parser);
+				count++;
+				if (progressStep > 0 && count % progressStep == 0) {
+					log.info("Прочитано грузовиков: {}", count);
+				}
+			}
+			if (parser.currentToken() != JsonToken.END_ARRAY) {
+				throw invalidResult(parser.getTokenLocation(), "ожидается объект грузовика");
+			}
+		}
+		log.info("Прочитано грузовиков: {}", count);
+		return count;
+	}
+
+	/**
+	 * Читает объект грузовика и передаёт формы его посылок в обработчик.
+	 * Массив "packages" может отсутствовать или быть null, его элементы должны быть объектами посылок.
+	 */
+	private void readResultTruck(JsonParser parser, ResultListener listener) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			boolean packages = "packages".equals(parser.getCurrentName());
+			JsonToken value = parser.nextToken();
+			if (!packages || value == JsonToken.VALUE_NULL) {
+				parser.skipChildren();
+				continue;
+			}
+			if (value != JsonToken.START_ARRAY) {
+				throw invalidResult(parser.getTokenLocation(), "ожидается массив посылок");
+			}
+			while (parser.nextToken() == JsonToken.START_OBJECT) {
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					boolean form = "package".equals(parser.getCurrentName());
+					if (parser.nextToken() == JsonToken.VALUE_STRING && form) {
+						listener.onPackage(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+					} else {
+						parser.skipChildren();
+					}
+				}
+			}
+			if (parser.currentToken() != JsonToken.END_ARRAY) {
+				throw invalidResult(parser.getTokenLocation(), "ожидается объект посылки");
+			}
+		}
+	}
+
+	private static CustomException invalidResult(JsonLocation location, String reason) {
+		String message = String.format("Некорректный результат погрузки (строка %d, столбец %d): %s",
+				location.getLineNr(), location.getColumnNr(), reason);
+		log.error(message);
+		return new CustomException(message);
+	}
+
+	/**
+	 * Читает файл заказов пакетной погрузки.
+	 *
+	 * @param filePath путь до файла.
+	 * @return список заказов.
+	 */
+	public List<BatchOrder> readBatchOrders(String filePath) {
+		log.info("Чтение заказов из файла {}", filePath);
 		try {
-			structures = objectMapper.readValue(new File(filePath), new TypeReference<>() {
+			return objectMapper.readValue(new File(filePath), new TypeReference<>() {
 			});
 		} catch (IOException e) {
 			log.error("Ошибка чтения файла {}", filePath, e);
 			throw new CustomException("Ошибка чтения файла", e);
 		}
-		return structures;
 	}
 
 	/**
 	 * Записывает JSON данные в файл result.json.
 	 *
-	 * @param jsonBody тело JSON для записи.
+	 * @param jsonBody функция, записывающая тело JSON в поток файла.
 	 */
-	public void writeResultJson(String jsonBody) {
+	public void writeResultJson(Consumer<Writer> jsonBody) {
+		writeJsonFile(filResultName, jsonBody);
+	}
+
+	/**
+	 * Записывает JSON данные в указанный файл.
+	 *
+	 * @param filePath путь до файла.
+	 * @param jsonBody функция, записывающая тело JSON в поток файла.
+	 */
+	public void writeJsonFile(String filePath, Consumer<Writer> jsonBody) {
 		log.info("Создание json...");
 		try (Writer writer = new BufferedWriter(new OutputStreamWriter(
-				new FileOutputStream(filResultName), StandardCharsets.UTF_8))) {
-			writer.write(jsonBody);
+				new FileOutputStream(filePath), StandardCharsets.UTF_8))) {
+			jsonBody.accept(writer);
 		} catch (IOException e) {
 			log.error("Ошибка записи json");
 			throw new CustomException("Ошибка записи json", e);
 		}
 	}
+
+	/**
+	 * Записывает текст в указанный файл.
+	 *
+	 * @param filePath путь до файла.
+	 * @param text текст для записи.
+	 */
+	public void writeTextFile(String filePath, String text) {
+		log.info("Запись файла {}", filePath);
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(filePath), StandardCharsets.UTF_8))) {
+			writer.write(text);
+		} catch (IOException e) {
+			log.error("Ошибка записи файла {}", filePath);
+			throw new CustomException("Ошибка записи файла", e);
+		}
+	}
+
+	/**
+	 * Обработчик потокового чтения результата погрузки.
+	 */
+	public interface ResultListener {
+
+		/**
+		 * Вызывается для каждой посылки грузовика. Массив символов принадлежит парсеру
+		 * и действителен только до возврата из метода.
+		 *
+		 * @param form массив символов с формой посылки.
+		 * @param offset начало формы в массиве.
+		 * @param length длина формы.
+		 */
+		void onPackage(char[] form, int offset, int length);
+
+		/**
+		 * Вызывается после всех посылок грузовика.
+		 */
+		void onTruckEnd();
+
+	}
+
+	/**
+	 * Обработчик одного грузовика при проходе по результату погрузки.
+	 */
+	private interface TruckReader {
+
+		void read(JsonParser parser) throws IOException;
+
+	}
+
+	/**
+	 * Поток чтения файла, отображаемого в память последовательными частями не больше {@link #MAP_CHUNK} байт.
+	 */
+	private static final class MappedInputStream extends InputStream {
+
+		private static final long MAP_CHUNK = 1L << 30;
+
+		private final FileChannel channel;
+		private final long size;
+		private long position;
+		private MappedByteBuffer buffer;
+
+		private MappedInputStream(Path path) throws IOException {
+			this.channel = FileChannel.open(path, StandardOpenOption.READ);
+			this.size = channel.size();
+		}
+
+		@Override
+		public int read() throws IOException {
+			return nextChunk() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			if (!nextChunk()) {
+				return -1;
+			}
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			return count;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+
+		private boolean nextChunk() throws IOException {
+			if (buffer != null && buffer.hasRemaining()) {
+				return true;
+			}
+			if (position >= size) {
+				return false;
+			}
+			long length = Math.min(MAP_CHUNK, size - position);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			position += length;
+			return true;
+		}
+
+	}
 }
@@ -0,0 +1,266 @@
+package ru.liga.packagetruckspring.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.liga.packagetruckspring.model.Fleet;
+import ru.liga.packagetruckspring.model.Package;
+import ru.liga.packagetruckspring.model.PackagePlan;
+import ru.liga.packagetruckspring.model.Truck;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Сервис метрик погрузки: время этапов, количество посылок и грузовиков, заполненность кузовов.
+ */
+@Service
+@RequiredArgsConstructor
+public class MetricsService {
+
+    public static final String STAGE_TIMER = "pack.stage";
+    public static final String PACKAGES_PLACED = "pack.packages.placed";
+    public static final String PACKAGES_UNPLACED = "pack.packages.unplaced";
+    public static final String TRUCKS_USED = "pack.trucks.used";
+    public static final String TRUCKS_UNUSED = "pack.trucks.unused";
+    public static final String FILL_RATIO = "pack.fill.ratio";
+    public static final String PORTFOLIO_TIMER = "pack.portfolio.strategy";
+    public static final String CACHE_LOOKUPS = "pack.cache.lookups";
+    public static final String VERIFY_VIOLATIONS = "pack.verify.violations";
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Выполняет этап погрузки и записывает его длительность.
+     *
+     * @param stage название этапа.
+     * @param action действие этапа.
+     * @return результат этапа.
+     */
+    public <T> T recordStage(String stage, Supplier<T> action) {
+        return stageTimer(stage).record(action);
+    }
+
+    /**
+     * Выполняет этап погрузки без результата и записывает его длительность.
+     *
+     * @param stage название этапа.
+     * @param action действие этапа.
+     */
+    public void recordStage(String stage, Runnable action) {
+        stageTimer(stage).record(action);
+    }
+
+    /**
+     * Записывает итог погрузки: размещённые и неразмещённые посылки, занятые грузовики и их заполненность.
+     *
+     * @param trucks грузовики после погрузки.
+     * @param unplaced количество посылок, не поместившихся в грузовики.
+     */
+    public void recordResult(List<Truck> trucks, int unplaced) {
+        recordResult(countPackages(trucks), unplaced, countUsedTrucks(trucks), fillRatio(trucks));
+        countUnusedTrucks(trucks).forEach((type, count) ->
+                Counter.builder(TRUCKS_UNUSED).tag("type", type).register(meterRegistry).increment(count));
+    }
+
+    /**
+     * Записывает итог погрузки партии посылок.
+     *
+     * @param plan план погрузки партии.
+     */
+    public void recordResult(PackagePlan plan) {
+        int[] usedCells = new int[plan.getTruckHeights().length];
+        for (int i = 0; i < plan.getPlaced(); i++) {
+            int index = plan.getPlacementOrder()[i];
+            usedCells[plan.getTrucks()[index]] += plan.getBatch().getShape(index).getCellCount();
+        }
+        int usedTrucks = 0;
+        long cells = 0;
+        long area = 0;
+        for (int t = 0; t < usedCells.length; t++) {
+            if (usedCells[t] > 0) {
+                usedTrucks++;
+                cells += usedCells[t];
+                area += (long) plan.getTruckHeights()[t] * plan.getTruckWidths()[t];
+            }
+        }
+        recordResult(plan.getPlaced(), plan.getUnplaced(), usedTrucks, area > 0 ? (double) cells / area : 0);
+    }
+
+    private void recordResult(int placed, int unplaced, int usedTrucks, double fillRatio) {
+        Counter.builder(PACKAGES_PLACED).register(meterRegistry).increment(placed);
+        Counter.builder(PACKAGES_UNPLACED).register(meterRegistry).increment(unplaced);
+        Counter.builder(TRUCKS_USED).register(meterRegistry).increment(usedTrucks);
+        if (usedTrucks > 0) {
+            DistributionSummary.builder(FILL_RATIO).register(meterRegistry).record(fillRatio);
+        }
+    }
+
+    /**
+     * Подсчитывает грузовики, в которые погружена хотя бы одна посылка.
+     *
+     * @param trucks грузовики.
+     * @return количество занятых грузовиков.
+     */
+    public int countUsedTrucks(List<Truck> trucks) {
+        int usedTrucks = 0;
+        for (Truck truck : Fleet.loaded(trucks)) {
+            if (!truck.getPackages().isEmpty()) {
+                usedTrucks++;
+            }
+        }
+        return usedTrucks;
+    }
+
+    /**
+     * Подсчитывает грузовики без груза по типам кузова.
+     * Для парка количество считается по блокам: из количества грузовиков блока вычитаются занятые открытые грузовики.
+     *
+     * @param trucks грузовики.
+     * @return количество пустых грузовиков для каждого типа "высотаxширина" в порядке появления типа.
+     */
+    public Map<String, Integer> countUnusedTrucks(List<Truck> trucks) {
+        Map<String, Integer> unused = new LinkedHashMap<>();
+        if (trucks instanceof Fleet) {
+            Fleet fleet = (Fleet) trucks;
+            for (Fleet.Block block : fleet.getBlocks()) {
+                unused.merge(block.getHeight() + "x" + block.getWidth(), block.getCount(), Integer::sum);
+            }
+            for (Truck truck : fleet.getOpened().values()) {
+                if (!truck.getPackages().isEmpty()) {
+                    unused.merge(truck.getHeight() + "x" + truck.getWidth(), -1, Integer::sum);
+                }
+            }
+            unused.values().removeIf(count -> count == 0);
+            return unused;
+        }
+        for (Truck truck : trucks) {
+            if (truck.getPackages().isEmpty()) {
+                unused.merge(truck.getHeight() + "x" + truck.getWidth(), 1, Integer::sum);
+            }
+        }
+        return unused;
+    }
+
+    /**
+     * Вычисляет заполненность занятых грузовиков: доля клеток посылок в общей площади их кузовов.
+     *
+     * @param trucks грузовики.
+     * @return заполненность от 0 до 1, 0 если занятых грузовиков нет.
+     */
+    public double fillRatio(List<Truck> trucks) {
+        long usedCells = 0;
+        long usedArea = 0;
+        for (Truck truck : Fleet.loaded(trucks)) {
+            if (!truck.getPackages().isEmpty()) {
+                usedArea += (long) truck.getHeight() * truck.getWidth();
+                for (Package aPackage : truck.getPackages()) {
+                    usedCells += aPackage.getShape().getCellCount();
+                }
+            }
+        }
+        return usedArea > 0 ? (double) usedCells / usedArea : 0;
+    }
+
+    /**
+     * Записывает длительность стратегии погрузки в режиме портфеля.
+     *
+     * @param strategy название стратегии.
+     * @param nanos длительность в наносекундах.
+     */
+    public void recordStrategy(String strategy, long nanos) {
+        Timer.builder(PORTFOLIO_TIMER).tag("strategy", strategy).register(meterRegistry).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Записывает обращение к кэшу результатов погрузки.
+     *
+     * @param hit true, если результат найден в кэше.
+     */
+    public void recordCacheLookup(boolean hit) {
+        Counter.builder(CACHE_LOOKUPS).tag("result", hit ? "hit" : "miss").register(meterRegistry).increment();
+    }
+
+    /**
+     * Записывает количество нарушений, найденных проверкой плана погрузки.
+     *
+     * @param violations количество нарушений.
+     */
+    public void recordViolations(int violations) {
+        Counter.builder(VERIFY_VIOLATIONS).register(meterRegistry).increment(violations);
+    }
+
+    /**
+     * Подсчитывает исходные посылки, размещённые в грузовиках.
+     * Составная посылка ряда учитывается числом посылок, из которых она собрана.
+     *
+     * @param trucks грузовики.
+     * @return количество посылок.
+     */
+    public int countPackages(List<Truck> trucks) {
+        int count = 0;
+        for (Truck truck : Fleet.loaded(trucks)) {
+            for (Package aPackage : truck.getPackages()) {
+                count += aPackage.getCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Формирует текстовый отчёт по всем накопленным метрикам.
+     *
+     * @return отчёт, по одной метрике в строке.
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        meterRegistry.getMeters().stream()
+                .sorted(Comparator.comparing((Meter meter) -> meter.getId().getName())
+                        .thenComparing(meter -> meter.getId().getTags().toString()))
+                .forEach(meter -> sb.append(describe(meter)).append(System.lineSeparator()));
+        return sb.toString();
+    }
+
+    private Timer stageTimer(String stage) {
+        return Timer.builder(STAGE_TIMER).tag("stage", stage).register(meterRegistry);
+    }
+
+    private static String describe(Meter meter) {
+        String name = meter.getId().getName() + formatTags(meter.getId().getTags());
+        if (meter instanceof Timer) {
+            Timer timer = (Timer) meter;
+            return String.format(Locale.ROOT, "%s count=%d total=%.3fms mean=%.3fms max=%.3fms", name, timer.count(),
+                    timer.totalTime(TimeUnit.MILLISECONDS), timer.mean(TimeUnit.MILLISECONDS), timer.max(TimeUnit.MILLISECONDS));
+        }
+        if (meter instanceof Counter) {
+            return String.format(Locale.ROOT, "%s %.0f", name, ((Counter) meter).count());
+        }
+        if (meter instanceof DistributionSummary) {
+            DistributionSummary summary = (DistributionSummary) meter;
+            return String.format(Locale.ROOT, "%s count=%d mean=%.3f max=%.3f", name, summary.count(),
+                    summary.mean(), summary.max());
+        }
+        return name;
+    }
+
+    private static String formatTags(List<Tag> tags) {
+        if (tags.isEmpty()) {
+            return "";
+        }
+        return tags.stream()
+                .map(tag -> tag.getKey() + "=" + tag.getValue())
+                .collect(Collectors.joining(",", "[", "]"));
+    }
+
+}
@@ -1,16 +1,18 @@
 package ru.liga.packagetruckspring.service;
 
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
 
 import org.springframework.stereotype.Service;
+import ru.liga.packagetruckspring.model.Fleet;
+import ru.liga.packagetruckspring.model.PackageBatch;
+import ru.liga.packagetruckspring.model.Shape;
 import ru.liga.packagetruckspring.model.Truck;
 import ru.liga.packagetruckspring.model.Package;
+import ru.liga.packagetruckspring.packing.PackageOrder;
 import ru.liga.packagetruckspring.repository.PackageRepository;
 
 /**
@@ -18,18 +20,16 @@ import ru.liga.packagetruckspring.repository.PackageRepository;
  */
 @Slf4j
 @Service
-@AllArgsConstructor
 public class PackageService {
 
-	private PackageRepository packageRepository;
-
 	/**
 	 * Сортирует простые заказы из массива необработанных строк посылок.
 	 *
+	 * @param packageRepository репозиторий посылок сессии погрузки
 	 * @param unassembledPackagesList список строк, где каждая строка представляет необработанную посылку.
 	 * @return список готовых посылок, отсортированных по ширине нижней части.
 	 */
-	public List<Package> sortSimpleOrders(List<String> unassembledPackagesList) {
+	public List<Package> sortSimpleOrders(PackageRepository packageRepository, List<String> unassembledPackagesList) {
 		packageRepository.clear();
 		log.info("Сортировка посылок простая");
 
@@ -48,81 +48,123 @@ public class PackageService {
 		return sortRevertReadyPackage(packageRepository.findAll());
 	}
 
+	/**
+	 * Сортирует простые заказы из заранее скомпилированных форм без повторного разбора строк.
+	 *
+	 * @param packageRepository репозиторий посылок сессии погрузки
+	 * @param shapes список форм посылок заказа.
+	 * @return список готовых посылок, отсортированных по ширине нижней части.
+	 */
+	public List<Package> sortSimpleShapes(PackageRepository packageRepository, List<Shape> shapes) {
+		return sortSimpleShapes(packageRepository, shapes, PackageOrder.DEFAULT);
+	}
+
+	/**
+	 * Сортирует простые заказы из заранее скомпилированных форм в заданном порядке.
+	 *
+	 * @param packageRepository репозиторий посылок сессии погрузки
+	 * @param shapes список форм посылок заказа.
+	 * @param order порядок посылок.
+	 * @return список готовых посылок в заданном порядке.
+	 */
+	public List<Package> sortSimpleShapes(PackageRepository packageRepository, List<Shape> shapes, PackageOrder order) {
+		packageRepository.clear();
+		log.info("Сортировка посылок простая");
+
+		for (Shape shape : shapes) {
+			log.debug("Добавление посылки {}", shape.getForm());
+			packageRepository.save(new Package(shape));
+		}
+
+		return sortReadyPackage(packageRepository.findAll(), order);
+	}
+
+	/**
+	 * Сортирует партию посылок по ширине нижней части в порядке возрастания без создания объектов посылок.
+	 * Порядок совпадает с {@link #sortSimpleShapes(PackageRepository, List)}.
+	 *
+	 * @param batch партия посылок.
+	 * @return номера посылок партии в порядке погрузки.
+	 */
+	public int[] sortBatch(PackageBatch batch) {
+		return sortBatch(batch, PackageOrder.DEFAULT);
+	}
+
+	/**
+	 * Сортирует партию посылок в заданном порядке без создания объектов посылок.
+	 *
+	 * @param batch партия посылок.
+	 * @param order порядок посылок.
+	 * @return номера посылок партии в порядке погрузки.
+	 */
+	public int[] sortBatch(PackageBatch batch, PackageOrder order) {
+		log.info("Сортировка партии из {} посылок, порядок {}", batch.getSize(), order);
+		return order.sort(batch.getSize(), batch::getShape);
+	}
+
 	/**
 	 * Сортирует сложные заказы на основе списка грузовиков.
+	 * Все посылки грузовика объединяются в одну составную посылку так же, как в {@link #mergeRows(PackageRepository, List)}.
 	 *
+	 * @param packageRepository репозиторий посылок сессии погрузки
 	 * @param listTrucks список грузовиков, содержащих посылки.
 	 * @return список готовых посылок, отсортированных по ширине нижней части.
 	 */
-	public List<Package> sortComplexOrders(List<Truck> listTrucks) {
+	public List<Package> sortComplexOrders(PackageRepository packageRepository, List<Truck> listTrucks) {
 		packageRepository.clear();
 		log.info("Сортировка посылок комлексная");
 
-		listTrucks.forEach(truck -> {
-			if (!truck.getPackages().isEmpty() && truck.getPackages().size() > 1) {
-				log.debug("Складывание посылок {} и {}", truck.getPackages().get(0), truck.getPackages().get(1));
-				Package mergedPackage = mergeTwoPackages(truck.getPackages().get(0), truck.getPackages().get(1));
-				packageRepository.save(mergedPackage);
+		for (Truck truck : Fleet.loaded(listTrucks)) {
+			if (truck.getPackages().size() > 1) {
+				log.debug("Складывание {} посылок", truck.getPackages().size());
+				packageRepository.save(mergeRow(truck.getPackages()));
 			} else if (!truck.getPackages().isEmpty()) {
 				log.debug("Складывание посылки {}", Arrays.toString(truck.getPackages().get(0).getPack()));
 				packageRepository.save(truck.getPackages().get(0));
 			}
-		});
+		}
 
 		return sortRevertReadyPackage(packageRepository.findAll());
 	}
 
 	/**
-	 * Объединяет две посылки в одну.
+	 * Объединяет все посылки каждого ряда в одну составную посылку.
+	 * Посылки ряда выравниваются по низу и ставятся слева направо в порядке загрузки ряда,
+	 * каждая сдвигается влево до упора в уже поставленные.
 	 *
-	 * @param package1 первая посылка.
-	 * @param package2 вторая посылка.
-	 * @return объедененная посылка.
+	 * @param packageRepository репозиторий посылок сессии погрузки
+	 * @param rows список рядов, каждый ряд - посылки ряда слева направо.
+	 * @return список составных посылок в порядке рядов.
 	 */
-	private Package mergeTwoPackages(Package package1, Package package2) {
-		int height = Math.max(package1.getHeight(), package2.getHeight());
-		int widthTop = Math.max(package1.getWidthTop(), package2.getWidthTop());
-		int widthBottom = package1.getWidthBottom() + package2.getWidthBottom();
-		String[] mergedPack = mergePackages(package1, package2);
+	public List<Package> mergeRows(PackageRepository packageRepository, List<List<Package>> rows) {
+		packageRepository.clear();
+		log.info("Объединение посылок по рядам");
 
-		return new Package(height, widthTop, widthBottom, mergedPack);
+		for (List<Package> row : rows) {
+			if (row.size() > 1) {
+				packageRepository.save(mergeRow(row));
+			} else if (!row.isEmpty()) {
+				packageRepository.save(row.get(0));
+			}
+		}
+
+		return packageRepository.findAll();
 	}
 
 	/**
-	 * Объединяет две посылки в одну.
+	 * Объединяет посылки ряда в одну составную посылку, выравнивая их по низу.
 	 *
-	 * @param pkg1 первая посылка для объединения.
-	 * @param pkg2 вторая посылка для объединения.
-	 * @return массив строк, представляющий объединённую посылку.
+	 * @param packages посылки ряда слева направо.
+	 * @return объединённая посылка, в которой учтены все исходные посылки ряда.
 	 */
-	private String[] mergePackages(Package pkg1, Package pkg2) {
-		// Получаем пакеты из обоих объектов Package
-		String[] pack1 = pkg1.getPack();
-		String[] pack2 = pkg2.getPack();
-
-		// Определяем максимальную длину, чтобы избежать выхода за границы
-		int maxLength = Math.max(pack1.length, pack2.length);
-		List<String> mergedList = new ArrayList<>();
-
-		for (int i = 0; i < maxLength; i++) {
-			StringBuilder sb = new StringBuilder();
-			if (i < pack2.length) {
-				sb.append(pack2[i]);
-			}
-			if (i < pack1.length) {
-				sb.append(pack1[i]);
-			}
-			mergedList.add(sb.toString());
-		}
-
-		// Преобразуем список в массив для возврата
-		String[] mergedArray = new String[mergedList.size()];
-		int j = 0;
-		for (int i = mergedList.size()-1; i >= 0; i--) {
-			mergedArray[j] = mergedList.get(i);
-			j++;
+	private Package mergeRow(List<Package> packages) {
+		List<Shape> shapes = new ArrayList<>(packages.size());
+		int count = 0;
+		for (Package aPackage : packages) {
+			shapes.add(aPackage.getShape());
+			count += aPackage.getCount();
 		}
-		return mergedArray;
+		return new Package(Shape.compose(shapes), count);
 	}
 
 	/**
@@ -132,7 +174,21 @@ public class PackageService {
 	 * @return отсортированный список посылок.
 	 */
 	private List<Package> sortRevertReadyPackage(List<Package> readyPackages) {
-		readyPackages.sort(Comparator.comparingInt(Package::getWidthBottom));
+		return sortReadyPackage(readyPackages, PackageOrder.DEFAULT);
+	}
+
+	/**
+	 * Сортирует список посылок на месте в заданном порядке.
+	 *
+	 * @param readyPackages список посылок для сортировки.
+	 * @param order порядок посылок.
+	 * @return отсортированный список посылок.
+	 */
+	private List<Package> sortReadyPackage(List<Package> readyPackages, PackageOrder order) {
+		List<Package> sorted = order.sort(readyPackages, Package::getShape);
+		for (int i = 0; i < sorted.size(); i++) {
+			readyPackages.set(i, sorted.get(i));
+		}
 		return readyPackages;
 	}
 
@@ -0,0 +1,262 @@
+package ru.liga.packagetruckspring.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.liga.packagetruckspring.model.PackageBatch;
+import ru.liga.packagetruckspring.model.PackagePlan;
+import ru.liga.packagetruckspring.model.PackingMode;
+import ru.liga.packagetruckspring.model.PackingResult;
+import ru.liga.packagetruckspring.model.Shape;
+import ru.liga.packagetruckspring.packing.PackageOrder;
+
+import java.time.Duration;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Кэш результатов погрузки с вытеснением давно не использованных записей.
+ * Ключ - каноническая подпись заказа: отсортированное мультимножество форм посылок, описание парка
+ * грузовиков, режим и порядок посылок. Записи, содержащие форму, удаляются при изменении этой формы в каталоге.
+ * Кроме результатов погрузки объектов кэшируются планы погрузки партий {@link PackagePlan} с той же подписью
+ * заказа, ключи планов отличаются от ключей результатов.
+ * Результаты из кэша общие для всех обращений и не должны изменяться.
+ */
+@Slf4j
+@Service
+public class PackingResultCache {
+
+	@Value("${packing.cache.size:256}")
+	private int capacity = 256;
+
+	private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > capacity;
+		}
+	};
+	private long hits;
+	private long misses;
+
+	/**
+	 * Строит подпись заказа.
+	 * Порядок посылок в заказе не учитывается, подряд идущие одинаковые кузова в описании парка объединяются,
+	 * бюджет времени учитывается только для режимов, результат которых от него зависит.
+	 *
+	 * @param mode режим погрузки.
+	 * @param shapes формы посылок заказа.
+	 * @param size параметры грузовиков.
+	 * @param budget бюджет времени.
+	 * @param order порядок посылок перед погрузкой.
+	 * @return подпись заказа.
+	 */
+	public Signature signature(PackingMode mode, List<Shape> shapes, String size, Duration budget, PackageOrder order) {
+		Map<Shape, Integer> byInstance = new IdentityHashMap<>();
+		for (Shape shape : shapes) {
+			byInstance.merge(shape, 1, Integer::sum);
+		}
+		StringBuilder key = new StringBuilder(mode.name());
+		if (mode == PackingMode.OPTIMIZE || mode == PackingMode.EXACT || mode == PackingMode.PORTFOLIO) {
+			key.append('/').append(budget.toMillis());
+		}
+		return signature(key, byInstance, size, order);
+	}
+
+	/**
+	 * Строит подпись заказа для погрузки партии посылок по верхнему профилю кузова.
+	 * Посылки считаются по номерам форм партии, заказ в список форм не разворачивается.
+	 *
+	 * @param batch партия посылок.
+	 * @param size параметры грузовиков.
+	 * @param order порядок посылок перед погрузкой.
+	 * @return подпись заказа.
+	 */
+	public Signature signature(PackageBatch batch, String size, PackageOrder order) {
+		int[] counts = new int[batch.getCatalog().length];
+		for (int shapeId : batch.getShapeIds()) {
+			counts[shapeId]++;
+		}
+		Map<Shape, Integer> byInstance = new IdentityHashMap<>();
+		for (int id = 0; id < counts.length; id++) {
+			byInstance.merge(batch.getCatalog()[id], counts[id], Integer::sum);
+		}
+		return signature(new StringBuilder("BATCH-").append(PackingMode.SKYLINE.name()), byInstance, size, order);
+	}
+
+	private static Signature signature(StringBuilder key, Map<Shape, Integer> byInstance, String size, PackageOrder order) {
+		TreeMap<String, Integer> multiset = new TreeMap<>();
+		byInstance.forEach((shape, count) -> multiset.merge(shapeKey(shape), count, Integer::sum));
+
+		key.append('@').append(order);
+		key.append('|').append(canonicalFleet(size)).append('|');
+		multiset.forEach((shape, count) -> key.append(shape).append('*').append(count).append(';'));
+		return new Signature(key.toString(), multiset.keySet());
+	}
+
+	/**
+	 * Возвращает результат из кэша.
+	 *
+	 * @param signature подпись заказа.
+	 * @return результат или null, если заказ с такой подписью ещё не погружался.
+	 */
+	public PackingResult get(Signature signature) {
+		return (PackingResult) lookup(signature);
+	}
+
+	/**
+	 * Возвращает план погрузки партии из кэша.
+	 *
+	 * @param signature подпись заказа партии.
+	 * @return план или null, если партия с такой подписью ещё не погружалась.
+	 */
+	public PackagePlan getPlan(Signature signature) {
+		return (PackagePlan) lookup(signature);
+	}
+
+	private synchronized Object lookup(Signature signature) {
+		Entry entry = entries.get(signature.key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.result;
+	}
+
+	/**
+	 * Сохраняет результат погрузки.
+	 *
+	 * @param signature подпись заказа.
+	 * @param result результат погрузки.
+	 */
+	public synchronized void put(Signature signature, PackingResult result) {
+		entries.put(signature.key, new Entry(result, signature.shapes));
+	}
+
+	/**
+	 * Сохраняет план погрузки партии.
+	 *
+	 * @param signature подпись заказа партии.
+	 * @param plan план погрузки партии.
+	 */
+	public synchronized void putPlan(Signature signature, PackagePlan plan) {
+		entries.put(signature.key, new Entry(plan, signature.shapes));
+	}
+
+	/**
+	 * Удаляет записи, в заказах которых есть заданная форма.
+	 *
+	 * @param form форма посылки.
+	 * @param symbol символ посылки.
+	 */
+	public synchronized void invalidate(String form, String symbol) {
+		String shapeKey = shapeKey(form, symbol);
+		int removed = 0;
+		for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+			if (iterator.next().shapes.contains(shapeKey)) {
+				iterator.remove();
+				removed++;
+			}
+		}
+		log.debug("Из кэша погрузки удалено {} записей с формой {}", removed, form);
+	}
+
+	/**
+	 * Удаляет все записи.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return количество записей в кэше.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return количество найденных в кэше заказов.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return количество заказов, не найденных в кэше.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	private static String shapeKey(Shape shape) {
+		return shapeKey(shape.getForm(), shape.getSymbol());
+	}
+
+	private static String shapeKey(String form, String symbol) {
+		return form + '/' + symbol;
+	}
+
+	/**
+	 * Приводит описание парка к каноническому виду: подряд идущие кузова одного размера объединяются в "ВxШ*количество".
+	 * Некорректное описание возвращается как есть, ошибку сообщит создание грузовиков.
+	 */
+	private static String canonicalFleet(String size) {
+		StringBuilder fleet = new StringBuilder();
+		String type = null;
+		long count = 0;
+		for (String entry : size.split(",")) {
+			int separator = entry.indexOf('*');
+			String entryType = (separator < 0 ? entry : entry.substring(0, separator)).trim();
+			long entryCount;
+			try {
+				entryCount = separator < 0 ? 1 : Long.parseLong(entry.substring(separator + 1).trim());
+			} catch (NumberFormatException e) {
+				return size;
+			}
+			if (entryType.equals(type)) {
+				count += entryCount;
+				continue;
+			}
+			if (type != null) {
+				fleet.append(type).append('*').append(count).append(',');
+			}
+			type = entryType;
+			count = entryCount;
+		}
+		return fleet.append(type).append('*').append(count).toString();
+	}
+
+	/**
+	 * Подпись заказа: ключ кэша и формы посылок заказа.
+	 */
+	public static final class Signature {
+
+		private final String key;
+		private final Set<String> shapes;
+
+		private Signature(String key, Set<String> shapes) {
+			this.key = key;
+			this.shapes = shapes;
+		}
+
+	}
+
+	private static final class Entry {
+
+		private final Object result;
+		private final Set<String> shapes;
+
+		private Entry(Object result, Set<String> shapes) {
+			this.result = result;
+			this.shapes = shapes;
+		}
+
+	}
+
+}
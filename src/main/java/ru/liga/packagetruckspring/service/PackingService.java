@@ -0,0 +1,374 @@
+package ru.liga.packagetruckspring.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.liga.packagetruckspring.exception.CustomException;
+import ru.liga.packagetruckspring.model.Package;
+import ru.liga.packagetruckspring.model.PackageBatch;
+import ru.liga.packagetruckspring.model.PackagePlan;
+import ru.liga.packagetruckspring.model.PackingMode;
+import ru.liga.packagetruckspring.model.PackingResult;
+import ru.liga.packagetruckspring.model.Shape;
+import ru.liga.packagetruckspring.model.StrategyReport;
+import ru.liga.packagetruckspring.model.Truck;
+import ru.liga.packagetruckspring.model.Violation;
+import ru.liga.packagetruckspring.packing.PackageOrder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сервис выполнения заданий погрузки.
+ * Каждое задание выполняется в собственной {@link PackingSession}, поэтому задания можно запускать параллельно.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PackingService {
+
+	public static final Duration DEFAULT_BUDGET = Duration.ofSeconds(5);
+
+	/**
+	 * Стратегии режима портфеля. Режим оптимизации не входит: он может занять весь бюджет времени.
+	 */
+	private static final List<PackingMode> PORTFOLIO_MODES = List.of(PackingMode.SIMPLE, PackingMode.COMPLEX,
+			PackingMode.GRID, PackingMode.FFD, PackingMode.BFD, PackingMode.SKYLINE);
+	private static final Comparator<StrategyReport> PORTFOLIO_ORDER = Comparator
+			.comparingInt(StrategyReport::getUnplaced)
+			.thenComparingInt(StrategyReport::getTrucksUsed)
+			.thenComparing(Comparator.comparingDouble(StrategyReport::getFillRatio).reversed());
+
+	private final StructureService structureService;
+	private final PackageService packageService;
+	private final TruckService truckService;
+	private final MetricsService metricsService;
+	private final PackingResultCache packingResultCache;
+	private final VerifyService verifyService;
+
+	@Value("${packing.verify:true}")
+	private boolean verify = true;
+
+	/**
+	 * Выполняет погрузку посылок с заданными именами.
+	 *
+	 * @param mode режим погрузки.
+	 * @param listName список имён посылок через запятую, пустая строка означает все посылки каталога.
+	 * @param size параметры грузовиков.
+	 * @return результат погрузки.
+	 */
+	public PackingResult pack(String mode, String listName, String size) {
+		return pack(mode, listName, size, DEFAULT_BUDGET);
+	}
+
+	/**
+	 * Выполняет погрузку посылок с заданными именами.
+	 *
+	 * @param mode режим погрузки.
+	 * @param listName список имён посылок через запятую, пустая строка означает все посылки каталога.
+	 * @param size параметры грузовиков.
+	 * @param budget бюджет времени для режимов оптимизации, точного поиска и портфеля.
+	 * @return результат погрузки.
+	 */
+	public PackingResult pack(String mode, String listName, String size, Duration budget) {
+		return pack(mode, listName, size, budget, PackageOrder.DEFAULT);
+	}
+
+	/**
+	 * Выполняет погрузку посылок с заданными именами в заданном порядке посылок.
+	 *
+	 * @param mode режим погрузки.
+	 * @param listName список имён посылок через запятую, пустая строка означает все посылки каталога.
+	 * @param size параметры грузовиков.
+	 * @param budget бюджет времени для режимов оптимизации, точного поиска и портфеля.
+	 * @param order порядок посылок перед погрузкой.
+	 * @return результат погрузки.
+	 */
+	public PackingResult pack(String mode, String listName, String size, Duration budget, PackageOrder order) {
+		List<Shape> shapes = metricsService.recordStage("lookup-forms", () -> listName.isEmpty()
+				? structureService.getAllShapes()
+				: structureService.getShapesForName(listName));
+		return pack(PackingMode.fromString(mode), shapes, size, budget, order);
+	}
+
+	/**
+	 * Выполняет погрузку заранее скомпилированных форм в новой сессии.
+	 *
+	 * @param mode режим погрузки.
+	 * @param shapes формы посылок заказа.
+	 * @param size параметры грузовиков.
+	 * @return результат погрузки.
+	 */
+	public PackingResult pack(PackingMode mode, List<Shape> shapes, String size) {
+		return pack(mode, shapes, size, DEFAULT_BUDGET);
+	}
+
+	/**
+	 * Выполняет погрузку заранее скомпилированных форм в новой сессии.
+	 * Повторный заказ с тем же мультимножеством форм, парком и режимом возвращается из кэша без погрузки;
+	 * итог погрузки в метриках записывается и для результата из кэша, поэтому метрики считают выданные планы.
+	 * Новый результат перед сохранением в кэш проверяется на выход за границы кузова, пересечения и повторы посылок.
+	 *
+	 * @param mode режим погрузки.
+	 * @param shapes формы посылок заказа.
+	 * @param size параметры грузовиков.
+	 * @param budget бюджет времени для режимов оптимизации, точного поиска и портфеля.
+	 * @return результат погрузки.
+	 */
+	public PackingResult pack(PackingMode mode, List<Shape> shapes, String size, Duration budget) {
+		return pack(mode, shapes, size, budget, PackageOrder.DEFAULT);
+	}
+
+	/**
+	 * Выполняет погрузку заранее скомпилированных форм в новой сессии в заданном порядке посылок.
+	 * Режимы со своим порядком (по высоте или ширине) применяют его поверх заданного,
+	 * и заданный порядок различает посылки с равным ключом режима.
+	 *
+	 * @param mode режим погрузки.
+	 * @param shapes формы посылок заказа.
+	 * @param size параметры грузовиков.
+	 * @param budget бюджет времени для режимов оптимизации, точного поиска и портфеля.
+	 * @param order порядок посылок перед погрузкой.
+	 * @return результат погрузки.
+	 */
+	public PackingResult pack(PackingMode mode, List<Shape> shapes, String size, Duration budget, PackageOrder order) {
+		PackingResultCache.Signature signature = metricsService.recordStage("cache-lookup",
+				() -> packingResultCache.signature(mode, shapes, size, budget, order));
+		PackingResult cached = packingResultCache.get(signature);
+		metricsService.recordCacheLookup(cached != null);
+		if (cached != null) {
+			log.info("Результат погрузки взят из кэша");
+			metricsService.recordResult(cached.getTrucks(), cached.getUnplaced());
+			return cached;
+		}
+		PackingResult result = mode == PackingMode.PORTFOLIO
+				? packPortfolio(shapes, size, budget, order)
+				: packSession(mode, shapes, size, budget, order);
+		metricsService.recordResult(result.getTrucks(), result.getUnplaced());
+		if (verify) {
+			List<Violation> violations = metricsService.recordStage("verify",
+					() -> verifyService.verifyTrucks(result.getTrucks(), null));
+			violations.forEach(violation -> log.error("Нарушение плана погрузки {}: {}", mode, violation));
+		}
+		packingResultCache.put(signature, result);
+		return result;
+	}
+
+	/**
+	 * Выполняет погрузку по верхнему профилю кузова для партии посылок в примитивных массивах.
+	 * Посылки не превращаются в объекты, поэтому режим подходит для заказов из миллионов посылок.
+	 *
+	 * @param listName список имён посылок через запятую, пустая строка означает все посылки каталога.
+	 * @param size параметры грузовиков.
+	 * @return план погрузки партии.
+	 */
+	public PackagePlan packSkylineBatch(String listName, String size) {
+		return packSkylineBatch(listName, size, PackageOrder.DEFAULT);
+	}
+
+	/**
+	 * Выполняет погрузку по верхнему профилю кузова для партии посылок в примитивных массивах.
+	 * Посылки упорядочиваются по высоте, заданный порядок различает посылки равной высоты.
+	 * Если включена проверка планов, готовый план проверяется по битовой сетке без создания объектов посылок.
+	 * План кэшируется по подписи заказа так же, как результаты погрузки объектов.
+	 *
+	 * @param listName список имён посылок через запятую, пустая строка означает все посылки каталога.
+	 * @param size параметры грузовиков.
+	 * @param packageOrder порядок посылок перед погрузкой.
+	 * @return план погрузки партии.
+	 */
+	public PackagePlan packSkylineBatch(String listName, String size, PackageOrder packageOrder) {
+		PackageBatch batch = metricsService.recordStage("lookup-forms", () -> listName.isEmpty()
+				? PackageBatch.of(structureService.getAllShapes())
+				: PackageBatch.ofRuns(structureService.getOrderForName(listName)));
+		PackingResultCache.Signature signature = metricsService.recordStage("cache-lookup",
+				() -> packingResultCache.signature(batch, size, packageOrder));
+		PackagePlan cached = packingResultCache.getPlan(signature);
+		metricsService.recordCacheLookup(cached != null);
+		if (cached != null) {
+			log.info("План погрузки партии взят из кэша");
+			metricsService.recordResult(cached);
+			return cached;
+		}
+		PackingSession session = new PackingSession();
+		metricsService.recordStage("create-trucks", () -> truckService.createTruck(session.getTruckRepository(), size));
+		int[] order = metricsService.recordStage("sort", () -> packageService.sortBatch(batch, packageOrder));
+		metricsService.recordStage("feasibility", () -> truckService.checkFeasibility(session.getTruckRepository(), batch));
+		PackagePlan plan = metricsService.recordStage("pack-skyline",
+				() -> truckService.createSkylinePack(session.getTruckRepository(), batch, order));
+		metricsService.recordResult(plan);
+		if (verify) {
+			List<Violation> violations = metricsService.recordStage("verify", () -> verifyService.verifyPlan(plan));
+			violations.forEach(violation -> log.error("Нарушение плана погрузки партии: {}", violation));
+		}
+		packingResultCache.putPlan(signature, plan);
+		return plan;
+	}
+
+	/**
+	 * Запускает все стратегии портфеля параллельно, каждую в собственной сессии со своим парком грузовиков,
+	 * и выбирает план с наименьшим числом неразмещённых посылок, затем грузовиков, затем с наибольшей заполненностью.
+	 * Стратегии, не уложившиеся в бюджет времени, отменяются и в выборе не участвуют: циклы погрузки
+	 * и поиска проверяют прерывание потока, поэтому отменённая стратегия освобождает поток сразу, а не по завершении.
+	 *
+	 * @param shapes формы посылок заказа.
+	 * @param size параметры грузовиков.
+	 * @param budget бюджет времени на одну стратегию.
+	 * @param order порядок посылок перед погрузкой.
+	 * @return лучший результат с итогами всех стратегий.
+	 */
+	private PackingResult packPortfolio(List<Shape> shapes, String size, Duration budget, PackageOrder order) {
+		ExecutorService executor = Executors.newFixedThreadPool(PORTFOLIO_MODES.size(), runnable -> {
+			Thread thread = new Thread(runnable, "portfolio");
+			thread.setDaemon(true);
+			return thread;
+		});
+		List<Callable<PackingResult>> tasks = new ArrayList<>();
+		long[] elapsed = new long[PORTFOLIO_MODES.size()];
+		for (int i = 0; i < PORTFOLIO_MODES.size(); i++) {
+			int index = i;
+			tasks.add(() -> {
+				long start = System.nanoTime();
+				PackingResult result = packSession(PORTFOLIO_MODES.get(index), shapes, size, budget, order);
+				elapsed[index] = System.nanoTime() - start;
+				return result;
+			});
+		}
+		try {
+			List<Future<PackingResult>> futures = executor.invokeAll(tasks, budget.toMillis(), TimeUnit.MILLISECONDS);
+			List<StrategyReport> reports = new ArrayList<>();
+			PackingResult best = null;
+			StrategyReport bestReport = null;
+			for (int i = 0; i < futures.size(); i++) {
+				PackingMode strategy = PORTFOLIO_MODES.get(i);
+				PackingResult result = completedResult(strategy, futures.get(i));
+				if (result == null) {
+					reports.add(StrategyReport.builder().mode(strategy).completed(false)
+							.elapsedMillis(budget.toMillis()).build());
+					continue;
+				}
+				metricsService.recordStrategy(strategy.name(), elapsed[i]);
+				StrategyReport report = StrategyReport.builder()
+						.mode(strategy)
+						.completed(true)
+						.trucksUsed(metricsService.countUsedTrucks(result.getTrucks()))
+						.unplaced(result.getUnplaced())
+						.fillRatio(metricsService.fillRatio(result.getTrucks()))
+						.elapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsed[i]))
+						.build();
+				reports.add(report);
+				if (bestReport == null || PORTFOLIO_ORDER.compare(report, bestReport) < 0) {
+					best = result;
+					bestReport = report;
+				}
+			}
+			if (best == null) {
+				throw new CustomException("Ни одна стратегия не завершилась за " + budget.toMillis() + " мс");
+			}
+			log.info("Портфель: выбрана стратегия {}", best.getMode());
+			return new PackingResult(best.getMode(), best.getTrucks(), best.getUnplaced(), reports, false);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CustomException("Погрузка портфелем прервана", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Возвращает результат завершившейся стратегии портфеля.
+	 *
+	 * @return результат или null, если стратегия отменена по времени или завершилась непредвиденной ошибкой.
+	 * @throws CustomException если стратегия отклонила заказ, например парк грузовиков его не вмещает.
+	 */
+	private PackingResult completedResult(PackingMode strategy, Future<PackingResult> future) throws InterruptedException {
+		if (future.isCancelled()) {
+			log.warn("Стратегия {} не уложилась в бюджет времени", strategy);
+			return null;
+		}
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CustomException) {
+				throw (CustomException) e.getCause();
+			}
+			log.error("Ошибка стратегии {}", strategy, e.getCause());
+			return null;
+		}
+	}
+
+	/**
+	 * Выполняет погрузку одним режимом в новой сессии.
+	 *
+	 * @param mode режим погрузки.
+	 * @param shapes формы посылок заказа.
+	 * @param size параметры грузовиков.
+	 * @param budget бюджет времени для режимов оптимизации и точного поиска.
+	 * @param order порядок посылок перед погрузкой.
+	 * @return результат погрузки.
+	 */
+	private PackingResult packSession(PackingMode mode, List<Shape> shapes, String size, Duration budget, PackageOrder order) {
+		PackingSession session = new PackingSession();
+		List<Truck> trucks;
+		boolean optimal = false;
+		metricsService.recordStage("create-trucks", () -> truckService.createTruck(session.getTruckRepository(), size));
+		List<Package> sortPackages = metricsService.recordStage("sort",
+				() -> packageService.sortSimpleShapes(session.getPackageRepository(), shapes, order));
+		metricsService.recordStage("feasibility",
+				() -> truckService.checkFeasibility(session.getTruckRepository(), sortPackages));
+		switch (mode) {
+			case SIMPLE:
+				trucks = metricsService.recordStage("pack-simple",
+						() -> truckService.createSimplePack(session.getTruckRepository(), sortPackages));
+				break;
+			case GRID:
+				trucks = metricsService.recordStage("pack-grid",
+						() -> truckService.createGridPack(session.getTruckRepository(), sortPackages));
+				break;
+			case SKYLINE:
+				trucks = metricsService.recordStage("pack-skyline",
+						() -> truckService.createSkylinePack(session.getTruckRepository(), sortPackages));
+				break;
+			case OPTIMIZE:
+				trucks = metricsService.recordStage("pack-optimize",
+						() -> truckService.createOptimizedPack(session.getTruckRepository(), sortPackages, budget));
+				break;
+			case EXACT:
+				optimal = metricsService.recordStage("pack-exact",
+						() -> truckService.createExactPack(session.getTruckRepository(), sortPackages, budget));
+				trucks = session.getTruckRepository().findAll();
+				break;
+			case FFD:
+			case BFD:
+				boolean bestFit = mode == PackingMode.BFD;
+				List<List<Package>> rows = metricsService.recordStage("pack-width",
+						() -> truckService.createFitDecreasingPackForWidth(session.getTruckRepository(), sortPackages, bestFit));
+				List<Package> rowPackages = metricsService.recordStage("merge-rows",
+						() -> packageService.mergeRows(session.getPackageRepository(), rows));
+				trucks = metricsService.recordStage("pack-height",
+						() -> truckService.createFitDecreasingPackForHeight(session.getTruckRepository(), rowPackages, bestFit));
+				break;
+			default:
+				List<Truck> trucksForWidth = metricsService.recordStage("pack-width",
+						() -> truckService.createComplexPackForWidth(session.getTruckRepository(), sortPackages));
+				List<Package> sortPackagesComplex = metricsService.recordStage("merge-complex",
+						() -> packageService.sortComplexOrders(session.getPackageRepository(), trucksForWidth));
+				metricsService.recordStage("create-trucks", () -> truckService.createTruck(session.getTruckRepository(), size));
+				trucks = metricsService.recordStage("pack-height",
+						() -> truckService.createComplexPackFoHeight(session.getTruckRepository(), sortPackagesComplex));
+		}
+		int unplaced = sortPackages.size() - metricsService.countPackages(trucks);
+		return new PackingResult(mode, trucks, unplaced, Collections.emptyList(), optimal);
+	}
+
+}
@@ -0,0 +1,19 @@
+package ru.liga.packagetruckspring.service;
+
+import lombok.Getter;
+import ru.liga.packagetruckspring.repository.PackageRepository;
+import ru.liga.packagetruckspring.repository.TruckRepository;
+
+/**
+ * Сессия погрузки одного задания.
+ * Сессия владеет собственными репозиториями посылок и грузовиков, поэтому несколько заданий
+ * могут выполняться параллельно, не изменяя состояние друг друга. Каталог форм в сессию не входит:
+ * формы заказа разрешаются при старте задания и далее не меняются.
+ */
+@Getter
+public class PackingSession {
+
+	private final PackageRepository packageRepository = new PackageRepository();
+	private final TruckRepository truckRepository = new TruckRepository();
+
+}
@@ -0,0 +1,231 @@
+package ru.liga.packagetruckspring.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.liga.packagetruckspring.exception.CustomException;
+import ru.liga.packagetruckspring.model.Fleet;
+import ru.liga.packagetruckspring.model.Package;
+import ru.liga.packagetruckspring.model.Shape;
+import ru.liga.packagetruckspring.model.Truck;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сервис текущего плана погрузки, который меняется по одной посылке.
+ * План хранится в памяти по сетке занятости: новая посылка занимает свободное место в уже загруженных
+ * грузовиках, убранная посылка освобождает свои клетки. Полная перепогрузка выполняется, только если
+ * для новой посылки нет места или план стал слишком фрагментированным.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PlanService {
+
+	private final StructureService structureService;
+	private final PackageService packageService;
+	private final TruckService truckService;
+	private final MetricsService metricsService;
+
+	@Value("${plan.repack-threshold:0.25}")
+	private double repackThreshold = 0.25;
+
+	private String size;
+	private Fleet trucks = new Fleet();
+
+	/**
+	 * Создаёт новый план погрузки по сетке занятости.
+	 *
+	 * @param listName список имён посылок через запятую, пустая строка означает все посылки каталога.
+	 * @param size параметры грузовиков.
+	 * @return грузовики плана.
+	 * @throws CustomException если парк грузовиков не вмещает заказ.
+	 */
+	public synchronized List<Truck> createPlan(String listName, String size) {
+		List<Shape> shapes = listName.isEmpty()
+				? structureService.getAllShapes()
+				: structureService.getShapesForName(listName);
+		Fleet planned = metricsService.recordStage("plan-repack", () -> repack(size, shapes));
+		this.size = size;
+		this.trucks = planned;
+		int unplaced = shapes.size() - metricsService.countPackages(planned);
+		if (unplaced > 0) {
+			log.warn("В план не поместилось посылок: {}", unplaced);
+		}
+		return planned;
+	}
+
+	/**
+	 * Добавляет в план одну посылку. Если свободного места нет, план перепогружается вместе с новой посылкой.
+	 *
+	 * @param name имя посылки.
+	 * @return номер грузовика, в который погружена посылка, начиная с 1.
+	 * @throws CustomException если плана нет, посылка не найдена или не помещается в парк.
+	 */
+	public synchronized int addToPlan(String name) {
+		requirePlan();
+		Package readyPack = new Package(findShape(name));
+		int truck = metricsService.recordStage("plan-add", () -> truckService.placePackage(trucks, readyPack));
+		if (truck < 0) {
+			log.info("Для посылки {} нет места, план перепогружается", name);
+			List<Shape> shapes = planShapes();
+			shapes.add(readyPack.getShape());
+			Fleet planned = metricsService.recordStage("plan-repack", () -> repack(size, shapes, readyPack));
+			if (metricsService.countPackages(planned) < shapes.size()) {
+				throw new CustomException("Посылка " + name + " не помещается в парк грузовиков плана");
+			}
+			trucks = planned;
+			truck = findTruck(readyPack);
+		}
+		log.info("Посылка {} погружена в грузовик {}", name, truck + 1);
+		return truck + 1;
+	}
+
+	/**
+	 * Убирает из плана последнюю погруженную посылку с заданным именем.
+	 * Посылка ищется по ссылке на форму своей структуры: каталог компилирует отдельную форму для каждой структуры,
+	 * поэтому посылка другой структуры с такой же формой и символом не убирается.
+	 * Если после этого доля лишних грузовиков превышает порог, план перепогружается
+	 * и заменяется новым, если новый план занимает меньше грузовиков.
+	 *
+	 * @param name имя посылки.
+	 * @return true, если план был заменён перепогруженным.
+	 * @throws CustomException если плана нет или такой посылки в плане нет.
+	 */
+	public synchronized boolean removeFromPlan(String name) {
+		requirePlan();
+		Shape shape = findShape(name);
+		boolean removed = metricsService.recordStage("plan-remove", () -> removeLast(shape));
+		if (!removed) {
+			throw new CustomException("Посылки " + name + " нет в плане");
+		}
+		double fragmentation = fragmentation();
+		if (fragmentation <= repackThreshold) {
+			return false;
+		}
+		log.info("Фрагментация плана {} выше порога {}, план перепогружается", fragmentation, repackThreshold);
+		List<Shape> shapes = planShapes();
+		Fleet planned = metricsService.recordStage("plan-repack", () -> repack(size, shapes));
+		boolean improved = metricsService.countUsedTrucks(planned) < metricsService.countUsedTrucks(trucks);
+		if (improved) {
+			trucks = planned;
+		}
+		return improved;
+	}
+
+	/**
+	 * @return грузовики текущего плана.
+	 */
+	public synchronized List<Truck> getTrucks() {
+		return trucks;
+	}
+
+	/**
+	 * Вычисляет фрагментацию плана: долю занятых грузовиков сверх нижней границы по площади.
+	 *
+	 * @return фрагментация от 0 до 1, 0 для пустого плана.
+	 */
+	public synchronized double fragmentation() {
+		int used = 0;
+		long cells = 0;
+		int maxArea = 1;
+		for (Fleet.Block block : trucks.getBlocks()) {
+			maxArea = Math.max(maxArea, block.getHeight() * block.getWidth());
+		}
+		for (Truck truck : trucks.getOpened().values()) {
+			if (!truck.getPackages().isEmpty()) {
+				used++;
+				cells += truck.getOccupiedCells();
+			}
+		}
+		if (used == 0) {
+			return 0;
+		}
+		long lowerBound = (cells + maxArea - 1) / maxArea;
+		return (double) (used - lowerBound) / used;
+	}
+
+	private Fleet repack(String size, List<Shape> shapes) {
+		return repack(size, shapes, null);
+	}
+
+	/**
+	 * Перепогружает план в новом парке грузовиков.
+	 * Посылки с одним именем делят одну форму, поэтому добавленная посылка подставляется в погрузку
+	 * вместо последней посылки своей формы: так её грузовик находится по самой посылке, а не по форме.
+	 *
+	 * @param size параметры грузовиков.
+	 * @param shapes формы посылок плана, включая форму добавленной посылки.
+	 * @param added добавленная посылка или null.
+	 * @return грузовики перепогруженного плана.
+	 */
+	private Fleet repack(String size, List<Shape> shapes, Package added) {
+		PackingSession session = new PackingSession();
+		truckService.createTruck(session.getTruckRepository(), size);
+		List<Package> sortPackages = packageService.sortSimpleShapes(session.getPackageRepository(), shapes);
+		if (added != null) {
+			for (int i = sortPackages.size() - 1; i >= 0; i--) {
+				if (sortPackages.get(i).getShape() == added.getShape()) {
+					sortPackages.set(i, added);
+					break;
+				}
+			}
+		}
+		truckService.checkFeasibility(session.getTruckRepository(), sortPackages);
+		truckService.createGridPack(session.getTruckRepository(), sortPackages);
+		return session.getTruckRepository().findAll();
+	}
+
+	private boolean removeLast(Shape shape) {
+		Truck lastTruck = null;
+		Package lastPackage = null;
+		for (Truck truck : trucks.getOpened().values()) {
+			for (Package aPackage : truck.getPackages()) {
+				if (aPackage.getShape() == shape) {
+					lastTruck = truck;
+					lastPackage = aPackage;
+				}
+			}
+		}
+		return lastTruck != null && lastTruck.remove(lastPackage);
+	}
+
+	private int findTruck(Package readyPack) {
+		for (Map.Entry<Integer, Truck> entry : trucks.getOpened().entrySet()) {
+			for (Package aPackage : entry.getValue().getPackages()) {
+				if (aPackage == readyPack) {
+					return entry.getKey();
+				}
+			}
+		}
+		return -1;
+	}
+
+	private List<Shape> planShapes() {
+		List<Shape> shapes = new ArrayList<>();
+		for (Truck truck : trucks.getOpened().values()) {
+			for (Package aPackage : truck.getPackages()) {
+				shapes.add(aPackage.getShape());
+			}
+		}
+		return shapes;
+	}
+
+	private Shape findShape(String name) {
+		List<Shape> shapes = structureService.getShapesForName(name);
+		if (shapes.isEmpty()) {
+			throw new CustomException("Посылка не найдена: " + name);
+		}
+		return shapes.get(0);
+	}
+
+	private void requirePlan() {
+		if (size == null) {
+			throw new CustomException("План погрузки не создан, выполните create-plan");
+		}
+	}
+
+}
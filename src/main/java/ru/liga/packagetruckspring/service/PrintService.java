@@ -3,13 +3,26 @@ package ru.liga.packagetruckspring.service;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import ru.liga.packagetruckspring.model.Package;
+import ru.liga.packagetruckspring.exception.CustomException;
+import ru.liga.packagetruckspring.model.BatchReport;
+import ru.liga.packagetruckspring.model.Fleet;
+import ru.liga.packagetruckspring.model.StrategyReport;
 import ru.liga.packagetruckspring.model.Structure;
 import ru.liga.packagetruckspring.model.Truck;
+import ru.liga.packagetruckspring.model.UnloadReport;
+import ru.liga.packagetruckspring.model.Violation;
 import ru.liga.packagetruckspring.repository.StructureRepository;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
  * Сервис для печати
@@ -19,6 +32,8 @@ import java.util.Optional;
 @AllArgsConstructor
 public class PrintService {
 
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
     private StructureRepository structureRepository;
 
     /**
@@ -50,66 +65,208 @@ public class PrintService {
         System.out.println(sb);
     }
 
+    /**
+     * Печатает отчёт по метрикам погрузки.
+     *
+     * @param report Текст отчёта.
+     */
+    public void printMetrics(String report) {
+        System.out.println(report.isEmpty() ? "Метрики ещё не собраны" : report);
+    }
+
+    /**
+     * Печатает итог пакетной погрузки.
+     *
+     * @param report Итог пакетной погрузки.
+     */
+    public void printBatchReport(BatchReport report) {
+        System.out.println(String.format(Locale.ROOT,
+                "Заказов: %d, ошибок: %d, время: %d мс, заказов/с: %.1f%n"
+                        + "Задержка заказа, мс: p50=%.3f p90=%.3f p99=%.3f max=%.3f",
+                report.getOrders(), report.getFailed(), report.getElapsedMillis(), report.getOrdersPerSecond(),
+                report.getP50Millis(), report.getP90Millis(), report.getP99Millis(), report.getMaxMillis()));
+    }
+
+    /**
+     * Печатает итог точного поиска.
+     *
+     * @param optimal Признак доказанной минимальности количества грузовиков.
+     */
+    public void printOptimality(boolean optimal) {
+        System.out.println(optimal
+                ? "Минимальное количество грузовиков доказано"
+                : "Минимальность не доказана: лимит поиска исчерпан, выведен лучший найденный план");
+    }
+
+    /**
+     * Печатает итоги стратегий режима портфеля.
+     *
+     * @param reports Итоги стратегий.
+     */
+    public void printStrategyReports(List<StrategyReport> reports) {
+        for (StrategyReport report : reports) {
+            if (report.isCompleted()) {
+                System.out.println(String.format(Locale.ROOT,
+                        "%s: грузовиков %d, не размещено %d, заполненность %.3f, время %d мс",
+                        report.getMode(), report.getTrucksUsed(), report.getUnplaced(), report.getFillRatio(),
+                        report.getElapsedMillis()));
+            } else {
+                System.out.println(String.format(Locale.ROOT, "%s: не завершена за %d мс",
+                        report.getMode(), report.getElapsedMillis()));
+            }
+        }
+    }
+
+    /**
+     * Печатает грузовик, в который посылка погружена в плане.
+     *
+     * @param name Имя посылки.
+     * @param truck Номер грузовика, начиная с 1.
+     */
+    public void printPlanTruck(String name, int truck) {
+        System.out.println("Посылка " + name + " погружена в грузовик " + truck);
+    }
+
+    /**
+     * Печатает итог проверки плана погрузки.
+     *
+     * @param violations Найденные нарушения.
+     */
+    public void printViolations(List<Violation> violations) {
+        if (violations.isEmpty()) {
+            System.out.println("Нарушений не найдено");
+            return;
+        }
+        for (Violation violation : violations) {
+            System.out.println(violation);
+        }
+        System.out.println("Нарушений: " + violations.size());
+    }
+
+    /**
+     * Выполняет разгрузку и печатает её итог в консоль через один буферизованный поток.
+     *
+     * @param unload Разгрузка: получает обработчик составов грузовиков и возвращает итог.
+     * @param totalsOnly Печатать только итог, без состава каждого грузовика.
+     */
+    public void printUnload(Function<BiConsumer<Integer, Map<String, Integer>>, UnloadReport> unload, boolean totalsOnly) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(System.out), OUTPUT_BUFFER_SIZE);
+        try {
+            UnloadReport report = unload.apply(totalsOnly ? (truck, counts) -> {
+            } : (truck, counts) -> writeUnloadedTruck(writer, truck, counts));
+            writeUnloadReport(writer, report);
+            writer.flush();
+        } catch (IOException e) {
+            throw new CustomException("Ошибка печати разгрузки", e);
+        }
+    }
+
+    /**
+     * Записывает состав грузовика, восстановленный разгрузкой, одной строкой.
+     *
+     * @param writer Поток для записи.
+     * @param truck Номер грузовика.
+     * @param counts Количество посылок по именам.
+     */
+    private void writeUnloadedTruck(Writer writer, int truck, Map<String, Integer> counts) {
+        try {
+            writer.write("Грузовик ");
+            writer.write(Integer.toString(truck));
+            writer.write(':');
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                writer.write(' ');
+                writer.write(entry.getKey());
+                writer.write(" - ");
+                writer.write(Integer.toString(entry.getValue()));
+                writer.write(';');
+            }
+            writer.write(System.lineSeparator());
+        } catch (IOException e) {
+            throw new CustomException("Ошибка печати разгрузки", e);
+        }
+    }
+
+    /**
+     * Записывает итог разгрузки.
+     *
+     * @param writer Поток для записи.
+     * @param report Итог разгрузки.
+     * @throws IOException если поток недоступен.
+     */
+    private void writeUnloadReport(Writer writer, UnloadReport report) throws IOException {
+        String n = System.lineSeparator();
+        writer.write("Грузовиков: " + report.getTrucks() + ", посылок: " + report.getPackages() + n);
+        for (Map.Entry<String, Long> entry : report.getTotals().entrySet()) {
+            writer.write(entry.getKey() + " - " + entry.getValue() + n);
+        }
+        if (report.getUnrecognized() > 0) {
+            writer.write(UnloadService.UNRECOGNIZED + " - " + report.getUnrecognized() + n);
+        }
+    }
+
     /**
      * Печатает детали предоставленного списка грузовиков в консоли.
      *
      * @param truckArrayList Список объектов Truck для печати. Если null, будет зафиксирована ошибка.
      */
     public void printTrucks(List<Truck> truckArrayList) {
-        if (truckArrayList != null) {
-            log.info("Печать в консоль...");
-            for (Truck truckPrint : truckArrayList) {
-                if (!truckPrint.getPackages().isEmpty()) {
-                    StringBuilder truckString = new StringBuilder();
-                    int width = truckPrint.getWidth();
-                    int freeSpaceHeight = Math.max(0, getFreeSpaceH(truckPrint.getPackages(), truckPrint.getHeight()));
-                    String line = "+" + " ".repeat(width) + "+\n";
-                    truckString.append(line.repeat(freeSpaceHeight));
-                    for (Package aPackage : truckPrint.getPackages()) {
-                        for (String packString : aPackage.getPack()) {
-                            String[] numberList = packString.split("\n");
-                            for (String number : numberList) {
-                                truckString.append("+");
-                                truckString.append(padRight(number, truckPrint.getWidth()));
-                                truckString.append("+").append(System.lineSeparator());
-                            }
-                        }
-                    }
-                    for (int i = 0; i <= truckPrint.getWidth(); i++) {
-                        truckString.append("+");
-                    }
-                    truckString.append("+").append(System.lineSeparator()).append("\r");
-                    System.out.println(truckString);
-                }
-            }
-        } else {
-            log.error("Что то пошло не так - Список грузовиков пуст");
-        }
+        printTrucks(truckArrayList, 0, 0);
     }
 
     /**
-     * Дополняет данную строку справа до заданной длины.
+     * Печатает страницу загруженных грузовиков в консоли через один буферизованный поток.
+     * Пустые грузовики не печатаются и в нумерации страницы не участвуют.
      *
-     * @param s Строка для дополнения.
-     * @param n Общая длина после дополнения.
-     * @return Дополненная строка.
+     * @param truckArrayList Список объектов Truck для печати. Если null, будет зафиксирована ошибка.
+     * @param offset Количество пропускаемых загруженных грузовиков.
+     * @param limit Наибольшее количество печатаемых грузовиков, 0 - без ограничения.
      */
-    private static String padRight(String s, int n) {
-        return String.format("%-" + n + "s", s);
+    public void printTrucks(List<Truck> truckArrayList, int offset, int limit) {
+        if (truckArrayList == null) {
+            log.error("Что то пошло не так - Список грузовиков пуст");
+            return;
+        }
+        log.info("Печать в консоль...");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(System.out), OUTPUT_BUFFER_SIZE);
+        try {
+            writeTrucks(truckArrayList, offset, limit, writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new CustomException("Ошибка печати грузовиков", e);
+        }
     }
 
     /**
-     * Вычисляет доступное вертикальное пространство в грузовике на основе его упаковок.
+     * Рисует страницу загруженных грузовиков в поток. Если напечатаны не все грузовики,
+     * в конце выводится строка с номерами показанных грузовиков. Поток после записи не закрывается.
      *
-     * @param packages Список объектов Package для расчета пространства по высоте.
-     * @return Оставшееся пространство по высоте в грузовике.
+     * @param trucks Список грузовиков.
+     * @param offset Количество пропускаемых загруженных грузовиков.
+     * @param limit Наибольшее количество печатаемых грузовиков, 0 - без ограничения.
+     * @param writer Поток для записи.
+     * @return Количество напечатанных грузовиков.
+     * @throws IOException если поток недоступен.
      */
-    private int getFreeSpaceH(List<Package> packages, int height) {
-        int sum = 0;
-        for (Package aPackage : packages) {
-            int i = aPackage.getHeight();
-            sum += i;
+    public int writeTrucks(List<Truck> trucks, int offset, int limit, Writer writer) throws IOException {
+        TruckRenderer renderer = new TruckRenderer(writer);
+        int pageSize = limit > 0 ? limit : Integer.MAX_VALUE;
+        int loaded = 0;
+        int printed = 0;
+        for (Truck truck : Fleet.loaded(trucks)) {
+            if (truck.getPackages().isEmpty()) {
+                continue;
+            }
+            if (loaded++ >= offset && printed < pageSize) {
+                renderer.render(truck);
+                printed++;
+            }
+        }
+        if (printed < loaded) {
+            writer.write(printed == 0
+                    ? "Показано 0 грузовиков из " + loaded
+                    : "Показаны грузовики " + (offset + 1) + "-" + (offset + printed) + " из " + loaded);
+            writer.write(System.lineSeparator());
         }
-        return height - sum;
+        return printed;
     }
 }
@@ -2,13 +2,20 @@ package ru.liga.packagetruckspring.service;
 
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
+import ru.liga.packagetruckspring.exception.CustomException;
+import ru.liga.packagetruckspring.model.Shape;
+import ru.liga.packagetruckspring.model.ShapeCount;
 import ru.liga.packagetruckspring.model.Structure;
 import ru.liga.packagetruckspring.repository.StructureRepository;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -18,7 +25,10 @@ import java.util.stream.Collectors;
 @AllArgsConstructor
 public class StructureService {
 
+    private static final char QUANTITY_SEPARATOR = '*';
+
     private StructureRepository structureRepository;
+    private PackingResultCache packingResultCache;
 
     /**
      * Возвращает список всех доступных форм пакетов.
@@ -48,13 +58,100 @@ public class StructureService {
     }
 
     /**
-     * Перезагружает структуры пакетов новыми данными.
+     * Возвращает скомпилированные формы всех доступных пакетов.
+     *
+     * @return Список форм всех структур.
+     */
+    public List<Shape> getAllShapes() {
+        return structureRepository.findAllShapes();
+    }
+
+    /**
+     * Возвращает имена структур по их скомпилированным формам в порядке каталога.
+     * Форма записывается так же, как в файле результата погрузки. Если форма повторяется, сохраняется первое имя.
+     *
+     * @return имена структур по формам.
+     */
+    public Map<String, String> getNamesByForm() {
+        Map<String, String> names = new LinkedHashMap<>();
+        for (Structure structure : structureRepository.findAll()) {
+            structureRepository.findShape(structure)
+                    .ifPresent(shape -> names.putIfAbsent(shape.getForm(), structure.getName()));
+        }
+        return names;
+    }
+
+    /**
+     * Возвращает скомпилированные формы пакетов для заданных имен.
+     * Имя может содержать количество через звёздочку, например "Квадрат*1000".
      *
-     * @param structures Список структур для загрузки.
+     * @param listName Список имен, разделенных запятыми.
+     * @return Список форм для заданных имен, одинаковые посылки ссылаются на один экземпляр формы,
+     * строки с количеством не разворачиваются в памяти, см. {@link ShapeCount#expand(List)}.
      */
-    public void reloadStructures(List<Structure> structures) {
-        structureRepository.clear();
-        structureRepository.saveAll(structures);
+    public List<Shape> getShapesForName(String listName) {
+        if (listName.indexOf(QUANTITY_SEPARATOR) < 0) {
+            return structureRepository.findShapesByNames(listName.split(","));
+        }
+        return ShapeCount.expand(getOrderForName(listName));
+    }
+
+    /**
+     * Возвращает заказ в виде строк (форма, количество) для заданных имен.
+     * Имя может содержать количество через звёздочку, например "Квадрат*1000", без количества считается одна посылка.
+     *
+     * @param listName Список имен, разделенных запятыми.
+     * @return Строки заказа в порядке имён.
+     * @throws CustomException если количество не является положительным числом.
+     */
+    public List<ShapeCount> getOrderForName(String listName) {
+        String[] entries = listName.split(",");
+        String[] names = new String[entries.length];
+        int[] counts = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            int separator = entries[i].lastIndexOf(QUANTITY_SEPARATOR);
+            names[i] = separator < 0 ? entries[i] : entries[i].substring(0, separator);
+            counts[i] = separator < 0 ? 1 : parseCount(entries[i].substring(separator + 1).trim(), entries[i]);
+        }
+        return structureRepository.findShapeCounts(names, counts);
+    }
+
+    private static int parseCount(String count, String entry) {
+        try {
+            int value = Integer.parseInt(count);
+            if (value > 0) {
+                return value;
+            }
+            throw new CustomException("Некорректное количество посылок: " + entry);
+        } catch (NumberFormatException e) {
+            throw new CustomException("Некорректное количество посылок: " + entry, e);
+        }
+    }
+
+    /**
+     * Заменяет каталог структурами из источника. Источник передаёт структуры по одной в промежуточный репозиторий,
+     * каталог заменяется только после того, как источник прочитан целиком. Если источник завершился ошибкой,
+     * прежний каталог не меняется. Неизменённые структуры переиспользуют формы прежнего каталога,
+     * поэтому сверх прежнего каталога на время загрузки хранятся новые структуры и формы только изменённых из них.
+     *
+     * @param source источник структур, получает обработчик структур и возвращает их количество.
+     * @return количество загруженных структур.
+     */
+    public int replaceStructures(ToIntFunction<Consumer<Structure>> source) {
+        StructureRepository staging = structureRepository.staging();
+        int count = source.applyAsInt(staging::save);
+        structureRepository.replaceWith(staging);
+        packingResultCache.clear();
+        return count;
+    }
+
+    /**
+     * Сохраняет прочитанную из файла структуру пакета.
+     *
+     * @param structure Структура для сохранения.
+     */
+    public void saveStructure(Structure structure) {
+        structureRepository.save(structure);
     }
 
     /**
@@ -64,11 +161,7 @@ public class StructureService {
      * @param form Форма новой структуры.
      */
     public void addNewStructure(String name, String form) {
-        Structure structure = new Structure();
-        structure.setName(name);
-        structure.setForm(form);
-        structure.setSymbol(getFirstCharacter(form));
-        structureRepository.save(structure);
+        structureRepository.save(createStructure(name, form, getFirstCharacter(form)));
     }
 
     /**
@@ -79,13 +172,8 @@ public class StructureService {
      * @param newForm Новая форма структуры.
      */
     public void updateStructure(String name, String newName, String newForm) {
-        structureRepository.findByName(name)
-                .ifPresent(structure -> {
-                    structure.setName(newName);
-                    structure.setForm(newForm);
-                    structure.setSymbol(getFirstCharacter(newForm));
-                    structureRepository.update(structure.getName(), structure);
-                });
+        structureRepository.findByName(name).ifPresent(this::invalidateResults);
+        structureRepository.update(name, createStructure(newName, newForm, getFirstCharacter(newForm)));
     }
 
     /**
@@ -97,9 +185,9 @@ public class StructureService {
     public void updateForm(String name, String newForm) {
         structureRepository.findByName(name)
                 .ifPresent(structure -> {
-                    structure.setForm(newForm);
-                    structure.setSymbol(getFirstCharacter(newForm));
-                    structureRepository.update(structure.getName(), structure);
+                    invalidateResults(structure);
+                    structureRepository.update(name,
+                            createStructure(structure.getName(), newForm, getFirstCharacter(newForm)));
                 });
     }
 
@@ -112,9 +200,9 @@ public class StructureService {
     public void updateSymbol(String name, String newSymbol) {
         structureRepository.findByName(name)
                 .ifPresent(structure -> {
-                    structure.setForm(structure.getForm().replace(structure.getSymbol(), newSymbol));
-                    structure.setSymbol(newSymbol);
-                    structureRepository.update(structure.getName(), structure);
+                    invalidateResults(structure);
+                    structureRepository.update(name, createStructure(structure.getName(),
+                            structure.getForm().replace(structure.getSymbol(), newSymbol), newSymbol));
                 });
     }
 
@@ -126,10 +214,33 @@ public class StructureService {
      */
     public void updateName(String oldName, String newName) {
         structureRepository.findByName(oldName)
-                .ifPresent(structure -> {
-                    structure.setName(newName);
-                    structureRepository.update(structure.getName(), structure);
-                });
+                .ifPresent(structure -> structureRepository.update(oldName,
+                        createStructure(newName, structure.getForm(), structure.getSymbol())));
+    }
+
+    /**
+     * Удаляет из кэша результаты погрузки заказов, содержащих форму структуры.
+     *
+     * @param structure Изменяемая структура.
+     */
+    private void invalidateResults(Structure structure) {
+        packingResultCache.invalidate(structure.getForm(), structure.getSymbol());
+    }
+
+    /**
+     * Создаёт структуру с заданными полями.
+     *
+     * @param name Имя структуры.
+     * @param form Форма структуры.
+     * @param symbol Символ структуры.
+     * @return Новая структура.
+     */
+    private Structure createStructure(String name, String form, String symbol) {
+        Structure structure = new Structure();
+        structure.setName(name);
+        structure.setForm(form);
+        structure.setSymbol(symbol);
+        return structure;
     }
 
     /**
@@ -0,0 +1,149 @@
+package ru.liga.packagetruckspring.service;
+
+import ru.liga.packagetruckspring.model.Package;
+import ru.liga.packagetruckspring.model.Placement;
+import ru.liga.packagetruckspring.model.Truck;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Рисует кузова грузовиков в поток вывода.
+ * Кузов закрашивается в переиспользуемый холст символов и выводится построчно без форматирования строк,
+ * поэтому печать большого парка не создаёт строк на каждый ряд. Экземпляр не потокобезопасен.
+ */
+public class TruckRenderer {
+
+    private static final char BORDER = '+';
+    private static final char EMPTY = ' ';
+
+    private final Writer writer;
+    private final char[] lineSeparator = System.lineSeparator().toCharArray();
+    private char[][] canvas = new char[0][];
+    private int[] rowLengths = new int[0];
+    private char[] border = new char[0];
+    private int rows;
+
+    /**
+     * @param writer поток вывода, рекомендуется буферизованный.
+     */
+    public TruckRenderer(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Рисует грузовик: посылки с координатами - по их позициям в сетке, остальные - стопкой снизу вверх.
+     *
+     * @param truck грузовик.
+     * @throws IOException если поток вывода недоступен.
+     */
+    public void render(Truck truck) throws IOException {
+        if (!truck.getPlacements().isEmpty()) {
+            paintPlaced(truck);
+        } else {
+            paintStacked(truck);
+        }
+        for (int r = 0; r < rows; r++) {
+            writer.write(BORDER);
+            writer.write(canvas[r], 0, rowLengths[r]);
+            writer.write(BORDER);
+            writer.write(lineSeparator);
+        }
+        writer.write(border, 0, truck.getWidth() + 2);
+        writer.write(lineSeparator);
+        writer.write('\r');
+        writer.write(lineSeparator);
+    }
+
+    private void paintPlaced(Truck truck) {
+        int height = truck.getHeight();
+        reset(height, truck.getWidth(), truck.getWidth());
+        for (Placement placement : truck.getPlacements()) {
+            String[] packRows = placement.getPack().getPack();
+            int top = height - placement.getY() - packRows.length;
+            for (int r = 0; r < packRows.length; r++) {
+                char[] row = canvas[top + r];
+                String packRow = packRows[r];
+                for (int c = 0; c < packRow.length(); c++) {
+                    char cell = packRow.charAt(c);
+                    if (cell != EMPTY) {
+                        row[placement.getX() + c] = cell;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Рисует посылки без координат так же, как печать по рядам: свободное место сверху,
+     * ниже строки посылок в порядке погрузки, каждая строка выровнена по левому краю и дополнена до ширины кузова.
+     */
+    private void paintStacked(Truck truck) {
+        int usedHeight = 0;
+        int packRows = 0;
+        int width = truck.getWidth();
+        for (Package aPackage : truck.getPackages()) {
+            usedHeight += aPackage.getHeight();
+            for (String packRow : aPackage.getPack()) {
+                int lineLength = 0;
+                for (int c = 0; c < packRow.length(); c++) {
+                    if (packRow.charAt(c) == '\n') {
+                        packRows++;
+                        width = Math.max(width, lineLength);
+                        lineLength = 0;
+                    } else {
+                        lineLength++;
+                    }
+                }
+                packRows++;
+                width = Math.max(width, lineLength);
+            }
+        }
+        int freeRows = Math.max(0, truck.getHeight() - usedHeight);
+        reset(freeRows + packRows, width, truck.getWidth());
+        int r = freeRows;
+        for (Package aPackage : truck.getPackages()) {
+            for (String packRow : aPackage.getPack()) {
+                int c = 0;
+                for (int i = 0; i < packRow.length(); i++) {
+                    char cell = packRow.charAt(i);
+                    if (cell == '\n') {
+                        r++;
+                        c = 0;
+                    } else {
+                        canvas[r][c++] = cell;
+                        rowLengths[r] = Math.max(rowLengths[r], c);
+                    }
+                }
+                r++;
+            }
+        }
+    }
+
+    /**
+     * Подготавливает холст заданного размера, заполненный пустыми клетками, увеличивая его при необходимости.
+     * Длина каждого ряда сбрасывается до ширины кузова.
+     */
+    private void reset(int height, int width, int bodyWidth) {
+        if (canvas.length < height || (height > 0 && canvas[0].length < width)) {
+            int capacity = Math.max(width, canvas.length > 0 ? canvas[0].length : 0);
+            char[][] grown = new char[Math.max(height, canvas.length)][];
+            for (int r = 0; r < grown.length; r++) {
+                grown[r] = new char[capacity];
+            }
+            canvas = grown;
+            rowLengths = new int[grown.length];
+        }
+        if (border.length < bodyWidth + 2) {
+            border = new char[bodyWidth + 2];
+            Arrays.fill(border, BORDER);
+        }
+        for (int r = 0; r < height; r++) {
+            Arrays.fill(canvas[r], 0, width, EMPTY);
+        }
+        Arrays.fill(rowLengths, 0, height, bodyWidth);
+        rows = height;
+    }
+
+}
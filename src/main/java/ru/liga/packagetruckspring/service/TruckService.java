@@ -1,18 +1,42 @@
 package ru.liga.packagetruckspring.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import ru.liga.packagetruckspring.exception.CustomException;
+import ru.liga.packagetruckspring.model.Fleet;
+import ru.liga.packagetruckspring.model.OccupancyGrid;
+import ru.liga.packagetruckspring.model.Shape;
 import ru.liga.packagetruckspring.model.Truck;
 import ru.liga.packagetruckspring.model.Package;
+import ru.liga.packagetruckspring.model.PackageBatch;
+import ru.liga.packagetruckspring.model.PackagePlan;
+import ru.liga.packagetruckspring.model.Placement;
 import ru.liga.packagetruckspring.model.TruckPackageJson;
+import ru.liga.packagetruckspring.packing.BranchAndBoundSolver;
+import ru.liga.packagetruckspring.packing.CapacityIndex;
+import ru.liga.packagetruckspring.packing.LateAcceptanceOptimizer;
+import ru.liga.packagetruckspring.packing.PackageOrder;
+import ru.liga.packagetruckspring.packing.Skyline;
 import ru.liga.packagetruckspring.repository.TruckRepository;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
 
 /**
  * Сервис для управления грузовиками.
@@ -23,64 +47,164 @@ import java.util.List;
 @AllArgsConstructor
 public class TruckService {
 
-	private TruckRepository truckRepository;
+	private static final long EXACT_NODE_LIMIT = 5_000_000;
+
+	private ObjectMapper objectMapper;
 
 	/**
 	 * Простая загрузка грузовиков.
+	 * Количество одинаковых грузовиков указывается через звёздочку, например "6x6*5000,10x12*200":
+	 * такие грузовики создаются только при загрузке в них груза.
 	 *
+	 * @param truckRepository репозиторий грузовиков сессии погрузки
 	 * @param params параметры грузовик доступных для погрузки
 	 */
-	public void createTruck(String params) {
+	public void createTruck(TruckRepository truckRepository, String params) {
 		truckRepository.clear();
 		String[] truckParams = params.split(",");
 		for (String truckParam : truckParams) {
-			String[] truckHeightWidth = truckParam.split("x");
+			int separator = truckParam.indexOf('*');
+			String[] truckHeightWidth = (separator < 0 ? truckParam : truckParam.substring(0, separator)).split("x");
 			int height = Integer.parseInt(truckHeightWidth[0]);
 			int width = Integer.parseInt(truckHeightWidth[1]);
-			truckRepository.save(new Truck(height,width));
+			if (separator < 0) {
+				truckRepository.save(new Truck(height,width));
+			} else {
+				truckRepository.saveType(height, width, parseTruckCount(truckParam.substring(separator + 1), truckParam));
+			}
+		}
+	}
+
+	private static int parseTruckCount(String count, String truckParam) {
+		try {
+			int value = Integer.parseInt(count.trim());
+			if (value > 0) {
+				return value;
+			}
+			throw new CustomException("Некорректное количество грузовиков: " + truckParam);
+		} catch (NumberFormatException e) {
+			throw new CustomException("Некорректное количество грузовиков: " + truckParam, e);
+		}
+	}
+
+	/**
+	 * Проверяет до погрузки, что парк грузовиков в принципе может вместить заказ:
+	 * каждая посылка помещается хотя бы в один кузов, а площадь посылок не превышает площади парка.
+	 * Нижняя граница количества грузовиков по площади самых больших кузовов пишется в журнал.
+	 *
+	 * @param truckRepository репозиторий грузовиков сессии погрузки
+	 * @param readyPackages список готовых пакетов для загрузки
+	 * @throws CustomException если парк заведомо не вмещает заказ
+	 */
+	public void checkFeasibility(TruckRepository truckRepository, List<Package> readyPackages) {
+		checkFeasibility(truckRepository, readyPackages.size(), index -> readyPackages.get(index).getShape());
+	}
+
+	/**
+	 * Проверяет до погрузки, что парк грузовиков в принципе может вместить партию посылок.
+	 *
+	 * @param truckRepository репозиторий грузовиков сессии погрузки
+	 * @param batch партия посылок
+	 * @throws CustomException если парк заведомо не вмещает заказ
+	 */
+	public void checkFeasibility(TruckRepository truckRepository, PackageBatch batch) {
+		checkFeasibility(truckRepository, batch.getSize(), batch::getShape);
+	}
+
+	private void checkFeasibility(TruckRepository truckRepository, int packages, IntFunction<Shape> shapes) {
+		Fleet trucks = truckRepository.findAll();
+		List<Fleet.Block> blocks = new ArrayList<>(trucks.getBlocks());
+		List<String> problems = new ArrayList<>();
+		Shape oversized = null;
+		int oversizedCount = 0;
+		long cells = 0;
+		for (int index = 0; index < packages; index++) {
+			Shape shape = shapes.apply(index);
+			cells += shape.getCellCount();
+			boolean fits = false;
+			for (Iterator<Fleet.Block> sizes = blocks.iterator(); sizes.hasNext() && !fits; ) {
+				Fleet.Block block = sizes.next();
+				fits = shape.getHeight() <= block.getHeight() && shape.getWidth() <= block.getWidth();
+			}
+			if (!fits && oversizedCount++ == 0) {
+				oversized = shape;
+			}
+		}
+		if (oversized != null) {
+			problems.add(String.format("посылка %s размером %dx%d не помещается ни в один кузов (таких посылок: %d)",
+					oversized.getForm(), oversized.getHeight(), oversized.getWidth(), oversizedCount));
+		}
+
+		blocks.sort(Comparator.comparingLong(TruckService::areaOf).reversed());
+		long fleetArea = 0;
+		long lowerBound = 0;
+		long rest = cells;
+		for (Fleet.Block block : blocks) {
+			long area = areaOf(block);
+			fleetArea += area * block.getCount();
+			if (rest > 0 && area > 0) {
+				long needed = Math.min(block.getCount(), (rest + area - 1) / area);
+				lowerBound += needed;
+				rest -= needed * area;
+			}
+		}
+		if (cells > fleetArea) {
+			problems.add(String.format("площадь посылок %d больше площади всех кузовов %d", cells, fleetArea));
 		}
+		if (!problems.isEmpty()) {
+			throw new CustomException("Парк грузовиков не вмещает заказ: " + String.join("; ", problems));
+		}
+		log.info("Нужно не меньше {} грузовиков из {}", lowerBound, trucks.size());
+	}
+
+	private static long areaOf(Fleet.Block block) {
+		return (long) block.getHeight() * block.getWidth();
 	}
 
 	/**
 	 * Простая загрузка грузовиков.
 	 *
+	 * @param truckRepository репозиторий грузовиков сессии погрузки
 	 * @param readyPackages список готовых пакетов для загрузки
 	 * @return список созданных грузовиков
 	 */
-	public List<Truck> createSimplePack(List<Package> readyPackages) {
-		List<Truck> trucks = truckRepository.findAll();
+	public List<Truck> createSimplePack(TruckRepository truckRepository, List<Package> readyPackages) {
+		Fleet trucks = truckRepository.findAll();
 		int truckIndex = 0;
 
 		for (Package readyPack : readyPackages) {
+			checkInterrupted();
 			while (truckIndex < trucks.size()) {
 				Truck currentTruck = trucks.get(truckIndex);
 				if (getFreeSpaceW(currentTruck.getPackages(),currentTruck.getWidth()) >= readyPack.getWidthBottom()) {
-					currentTruck.getPackages().add(readyPack);
-					truckIndex++;
+					trucks.open(truckIndex++).getPackages().add(readyPack);
 					break;
 				}
+				truckIndex++;
 			}
-			checkTrucksCount(readyPackages,trucks);
 		}
+		checkTrucksCount(readyPackages,trucks);
 		return truckRepository.findAll();
 	}
 
 	/**
 	 * Загружает грузовики, учитывая ширину пакетов.
 	 *
+	 * @param truckRepository репозиторий грузовиков сессии погрузки
 	 * @param readyPackages список готовых пакетов для загрузки
 	 * @return список созданных грузовиков
 	 */
-	public List<Truck> createComplexPackForWidth(List<Package> readyPackages) {
-		List<Truck> trucks = truckRepository.findAll();
+	public List<Truck> createComplexPackForWidth(TruckRepository truckRepository, List<Package> readyPackages) {
+		Fleet trucks = truckRepository.findAll();
 		List<Truck> newTrucks = new ArrayList<>();
 		int truckIndex = 0;
 
 		for (Package readyPack : readyPackages) {
+			checkInterrupted();
 			while (truckIndex < trucks.size()) {
 				Truck currentTruck = trucks.get(truckIndex);
 				if (getFreeSpaceW(currentTruck.getPackages(), currentTruck.getWidth()) >= readyPack.getWidthBottom()) {
-					currentTruck.getPackages().add(readyPack);
+					trucks.open(truckIndex).getPackages().add(readyPack);
 					break;
 				} else {
 					truckIndex++;
@@ -88,7 +212,7 @@ public class TruckService {
 			}
 		}
 
-		for (Truck truck : trucks) {
+		for (Truck truck : Fleet.loaded(trucks)) {
 			if (!truck.getPackages().isEmpty()) {
 				newTrucks.add(truck);
 			}
@@ -99,18 +223,20 @@ public class TruckService {
 	/**
 	 * Загружает грузовики, учитывая высоту пакетов.
 	 *
+	 * @param truckRepository репозиторий грузовиков сессии погрузки
 	 * @param readyPackages список готовых пакетов для загрузки
 	 * @return список созданных грузовиков
 	 */
-	public List<Truck> createComplexPackFoHeight(List<Package> readyPackages) {
-		List<Truck> trucks = truckRepository.findAll();
+	public List<Truck> createComplexPackFoHeight(TruckRepository truckRepository, List<Package> readyPackages) {
+		Fleet trucks = truckRepository.findAll();
 		int truckIndex = 0;
 
 		for (Package readyPack : readyPackages) {
+			checkInterrupted();
 			while (truckIndex < trucks.size()) {
 				Truck currentTruck = trucks.get(truckIndex);
 				if (getFreeSpaceH(currentTruck.getPackages(), currentTruck.getHeight()) >= readyPack.getHeight()) {
-					currentTruck.getPackages().add(readyPack);
+					trucks.open(truckIndex).getPackages().add(readyPack);
 					break;
 				} else {
 					truckIndex++;
@@ -121,6 +247,414 @@ public class TruckService {
 		return trucks;
 	}
 
+	/**
+	 * Загружает грузовики по сетке занятости, учитывая реальную форму посылок.
+	 * Каждая посылка размещается в первом грузовике, где для неё находится свободная позиция,
+	 * позиции перебираются снизу вверх и слева направо. Для одинаковых форм поиск продолжается
+	 * с позиции предыдущей такой же посылки, поэтому серия одинаковых посылок укладывается за один проход.
+	 *
+	 * @param truckRepository репозиторий грузовиков сессии погрузки
+	 * @param readyPackages список готовых пакетов для загрузки
+	 * @return список созданных грузовиков
+	 */
+	public List<Truck> createGridPack(TruckRepository truckRepository, List<Package> readyPackages) {
+		Fleet trucks = truckRepository.findAll();
+		Map<Shape, int[]> runHints = new IdentityHashMap<>();
+
+		for (Package readyPack : readyPackages) {
+			checkInterrupted();
+			int[] hint = runHints.computeIfAbsent(readyPack.getShape(), shape -> new int[2]);
+			boolean placed = false;
+			for (int i = hint[0]; i < trucks.size() && !placed; i++) {
+				if (!canHold(trucks, i, readyPack.getShape())) {
+					continue;
+				}
+				int position = placeBottomLeft(trucks.open(i), readyPack, i == hint[0] ? hint[1] : 0);
+				if (position >= 0) {
+					hint[0] = i;
+					hint[1] = position;
+					placed = true;
+				}
+			}
+			if (!placed) {
+				hint[0] = trucks.size();
+				log.error("Посылка {} не помещается ни в один грузовик", String.join(":", readyPack.getPack()));
+			}
+		}
+		return trucks;
+	}
+
+	/**
+	 * Размещает одну посылку в уже загруженных грузовиках, не трогая остальные посылки:
+	 * посылка занимает самую нижнюю, затем самую левую свободную позицию в первом грузовике, где она помещается.
+	 *
+	 * @param trucks грузовики плана погрузки
+	 * @param readyPack посылка
+	 * @return номер грузовика или -1, если свободного места нет
+	 */
+	public int placePackage(Fleet trucks, Package readyPack) {
+		for (int i = 0; i < trucks.size(); i++) {
+			if (canHold(trucks, i, readyPack.getShape()) && placeBottomLeft(trucks.open(i), readyPack, 0) >= 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Загружает грузовики по верхнему профилю кузова.
+	 * Посылки берутся по убыванию высоты, каждая опускается в первом подходящем грузовике
+	 * на самую нижнюю позицию, которую допускает профиль.
+	 *
+	 * @param truckRepository репозиторий грузовиков сессии погрузки
+	 * @param readyPackages список готовых пакетов для загрузки
+	 * @return список созданных грузовиков
+	 */
+	public List<Truck> createSkylinePack(TruckRepository truckRepository, List<Package> readyPackages) {
+		return placeBySkyline(truckRepository.findAll(), sortDecreasing(readyPackages, PackageOrder.Key.HEIGHT_DESC));
+	}
+
+	/**
+	 * Загружает партию посылок по верхнему профилю кузова, не создавая объектов посылок.
+	 * Порядок и позиции совпадают с {@link #createSkylinePack(TruckRepository, List)}.
+	 * В план входят только грузовики {@link Fleet#candidates(int)}, до остальных погрузка не доходит.
+	 *
+	 * @param truckRepository репозиторий грузовиков сессии погрузки
+	 * @param batch партия посылок
+	 * @param order номера посылок партии в порядке погрузки
+	 * @return план погрузки
+	 */
+	public PackagePlan createSkylinePack(TruckRepository truckRepository, PackageBatch batch, int[] order) {
+		Fleet fleet = truckRepository.findAll();
+		int[] candidates = fleet.candidates(batch.getSize());
+		int[] truckHeights = new int[candidates.length];
+		int[] truckWidths = new int[candidates.length];
+		int[] freeCells = new int[candidates.length];
+		Skyline[] skylines = new Skyline[candidates.length];
+		for (int t = 0; t < candidates.length; t++) {
+			truckHeights[t] = fleet.heightOf(candidates[t]);
+			truckWidths[t] = fleet.widthOf(candidates[t]);
+			freeCells[t] = truckHeights[t] * truckWidths[t];
+		}
+		PackagePlan plan = new PackagePlan(batch, truckHeights, truckWidths);
+		int[] heights = batch.getHeights();
+		int[] firstTrucks = new int[batch.getCatalog().length];
+
+		for (int index : PackageBatch.sortByKey(order, i -> -heights[i])) {
+			checkInterrupted();
+			Shape shape = batch.getShape(index);
+			int shapeId = batch.getShapeIds()[index];
+			boolean placed = false;
+			for (int t = firstTrucks[shapeId]; t < skylines.length && !placed; t++) {
+				firstTrucks[shapeId] = t;
+				if (freeCells[t] < shape.getCellCount()
+						|| shape.getHeight() > truckHeights[t] || shape.getWidth() > truckWidths[t]) {
+					continue;
+				}
+				if (skylines[t] == null) {
+					skylines[t] = new Skyline(truckHeights[t], truckWidths[t]);
+				}
+				int[] position = skylines[t].findPosition(shape);
+				if (position != null) {
+					skylines[t].place(shape, position[0], position[1]);
+					freeCells[t] -= shape.getCellCount();
+					plan.place(index, t, position[0], position[1]);
+					placed = true;
+				}
+			}
+			if (!placed) {
+				firstTrucks[shapeId] = skylines.length;
+				log.error("Посылка {} не помещается ни в один грузовик", shape.getForm());
+			}
+		}
+		return plan;
+	}
+
+	/**
+	 * Загружает грузовики по верхнему профилю в порядке, найденном локальным поиском.
+	 * Поиск начинается с порядка по убыванию высоты и выполняется параллельно в течение бюджета времени.
+	 *
+	 * @param truckRepository репозиторий грузовиков сессии погрузки
+	 * @param readyPackages список готовых пакетов для загрузки
+	 * @param budget бюджет времени на поиск
+	 * @return список созданных грузовиков
+	 */
+	public List<Truck> createOptimizedPack(TruckRepository truckRepository, List<Package> readyPackages, Duration budget) {
+		Fleet trucks = truckRepository.findAll();
+		List<Package> sorted = sortDecreasing(readyPackages, PackageOrder.Key.HEIGHT_DESC);
+		List<Shape> shapes = new ArrayList<>(sorted.size());
+		for (Package readyPack : sorted) {
+			shapes.add(readyPack.getShape());
+		}
+		int[] order = new LateAcceptanceOptimizer(trucks, shapes)
+				.optimize(budget, Runtime.getRuntime().availableProcessors());
+		List<Package> optimized = new ArrayList<>(order.length);
+		for (int index : order) {
+			optimized.add(sorted.get(index));
+		}
+		return placeBySkyline(trucks, optimized);
+	}
+
+	/**
+	 * Загружает грузовики точным перебором с минимальным количеством грузовиков.
+	 * Подходит для заказов до нескольких десятков посылок. Если за бюджет времени или лимит узлов
+	 * разместить все посылки не удалось, грузовики загружаются по верхнему профилю.
+	 *
+	 * @param truckRepository репозиторий грузовиков сессии погрузки
+	 * @param readyPackages список готовых пакетов для загрузки
+	 * @param budget бюджет времени на поиск
+	 * @return true, если минимальность количества грузовиков доказана
+	 */
+	public boolean createExactPack(TruckRepository truckRepository, List<Package> readyPackages, Duration budget) {
+		Fleet trucks = truckRepository.findAll();
+		List<Package> placeable = new ArrayList<>();
+		for (Package readyPack : readyPackages) {
+			Shape shape = readyPack.getShape();
+			if (trucks.getBlocks().stream().anyMatch(block -> shape.getWidth() <= block.getWidth()
+					&& shape.getHeight() <= block.getHeight())) {
+				placeable.add(readyPack);
+			} else {
+				log.error("Посылка {} не помещается ни в один грузовик", shape.getForm());
+			}
+		}
+		placeable.sort(Comparator.comparingInt((Package pack) -> pack.getShape().getCellCount()).reversed()
+				.thenComparing(pack -> pack.getShape().getForm()));
+		List<Shape> shapes = new ArrayList<>(placeable.size());
+		for (Package readyPack : placeable) {
+			shapes.add(readyPack.getShape());
+		}
+
+		BranchAndBoundSolver.Solution solution = new BranchAndBoundSolver(trucks, shapes, EXACT_NODE_LIMIT).solve(budget);
+		if (solution == null) {
+			log.warn("Точный поиск не разместил все посылки, погрузка по верхнему профилю");
+			placeBySkyline(trucks, sortDecreasing(placeable, PackageOrder.Key.HEIGHT_DESC));
+			return false;
+		}
+		for (int i = 0; i < placeable.size(); i++) {
+			trucks.open(solution.getTrucks()[i]).place(placeable.get(i), solution.getXs()[i], solution.getYs()[i]);
+		}
+		return solution.isProven();
+	}
+
+	/**
+	 * Размещает посылки в заданном порядке: каждая опускается в первом подходящем грузовике
+	 * на самую нижнюю позицию, которую допускает верхний профиль. Грузовики перебираются только
+	 * среди {@link Fleet#candidates(int)}, парк при этом должен быть новым.
+	 *
+	 * @param trucks грузовики.
+	 * @param orderedPackages посылки в порядке погрузки.
+	 * @return грузовики.
+	 */
+	private List<Truck> placeBySkyline(Fleet trucks, List<Package> orderedPackages) {
+		int[] candidates = trucks.candidates(orderedPackages.size());
+		Skyline[] skylines = new Skyline[candidates.length];
+		Map<Shape, int[]> runHints = new IdentityHashMap<>();
+
+		for (Package readyPack : orderedPackages) {
+			checkInterrupted();
+			Shape shape = readyPack.getShape();
+			int[] firstTruck = runHints.computeIfAbsent(shape, key -> new int[1]);
+			boolean placed = false;
+			for (int c = firstTruck[0]; c < candidates.length && !placed; c++) {
+				firstTruck[0] = c;
+				int i = candidates[c];
+				if (!canHold(trucks, i, shape)) {
+					continue;
+				}
+				if (skylines[c] == null) {
+					skylines[c] = new Skyline(trucks.heightOf(i), trucks.widthOf(i));
+				}
+				int[] position = skylines[c].findPosition(shape);
+				if (position != null) {
+					skylines[c].place(shape, position[0], position[1]);
+					trucks.open(i).place(readyPack, position[0], position[1]);
+					placed = true;
+				}
+			}
+			if (!placed) {
+				firstTruck[0] = candidates.length;
+				log.error("Посылка {} не помещается ни в один грузовик", shape.getForm());
+			}
+		}
+		return trucks;
+	}
+
+	/**
+	 * Раскладывает посылки по рядам по убыванию ширины методом "первый подходящий" или "лучший подходящий".
+	 * Ширина ряда равна ширине самого широкого грузовика, новые ряды открываются по мере необходимости,
+	 * ряд для посылки выбирается через индекс ёмкостей за O(log рядов).
+	 *
+	 * @param truckRepository репозиторий грузовиков сессии погрузки
+	 * @param readyPackages список готовых пакетов для загрузки
+	 * @param bestFit true - ряд с наименьшим достаточным остатком, false - первый подходящий ряд
+	 * @return список рядов, каждый ряд - посылки ряда слева направо
+	 */
+	public List<List<Package>> createFitDecreasingPackForWidth(TruckRepository truckRepository, List<Package> readyPackages,
+			boolean bestFit) {
+		int rowHeight = 0;
+		int rowWidth = 0;
+		for (Fleet.Block block : truckRepository.findAll().getBlocks()) {
+			rowHeight = Math.max(rowHeight, block.getHeight());
+			rowWidth = Math.max(rowWidth, block.getWidth());
+		}
+		List<List<Package>> rows = new ArrayList<>();
+		CapacityIndex index = CapacityIndex.create(bestFit);
+
+		for (Package readyPack : sortDecreasing(readyPackages, PackageOrder.Key.WIDTH_DESC)) {
+			checkInterrupted();
+			int width = readyPack.getShape().getWidth();
+			if (width > rowWidth || readyPack.getHeight() > rowHeight) {
+				log.error("Посылка {} шире или выше любого грузовика", readyPack.getShape().getForm());
+				continue;
+			}
+			int row = index.find(width);
+			if (row < 0) {
+				row = index.add(rowWidth);
+				rows.add(new ArrayList<>());
+			}
+			rows.get(row).add(readyPack);
+			index.update(row, index.capacity(row) - width);
+		}
+		return rows;
+	}
+
+	/**
+	 * Загружает ряды в грузовики по убыванию высоты методом "первый подходящий" или "лучший подходящий".
+	 * Грузовики сгруппированы по ширине, в каждой группе остаток высоты хранится в индексе ёмкостей,
+	 * поэтому выбор грузовика стоит O(типов грузовиков * log грузовиков).
+	 *
+	 * @param truckRepository репозиторий грузовиков сессии погрузки
+	 * @param readyPackages список рядов для загрузки
+	 * @param bestFit true - грузовик с наименьшим достаточным остатком высоты, false - первый подходящий грузовик
+	 * @return список грузовиков
+	 */
+	public List<Truck> createFitDecreasingPackForHeight(TruckRepository truckRepository, List<Package> readyPackages,
+			boolean bestFit) {
+		Fleet trucks = truckRepository.findAll();
+		TreeMap<Integer, TruckGroup> groups = new TreeMap<>();
+		for (int truckIndex : trucks.candidates(readyPackages.size())) {
+			TruckGroup group = groups.computeIfAbsent(trucks.widthOf(truckIndex), width -> new TruckGroup(bestFit));
+			group.index.add(trucks.heightOf(truckIndex));
+			group.truckIndexes.add(truckIndex);
+		}
+
+		for (Package readyPack : sortDecreasing(readyPackages, PackageOrder.Key.HEIGHT_DESC)) {
+			checkInterrupted();
+			TruckGroup bestGroup = null;
+			int bestBin = -1;
+			for (TruckGroup group : groups.tailMap(readyPack.getShape().getWidth(), true).values()) {
+				int bin = group.index.find(readyPack.getHeight());
+				if (bin >= 0 && (bestGroup == null || isBetter(group, bin, bestGroup, bestBin, bestFit))) {
+					bestGroup = group;
+					bestBin = bin;
+				}
+			}
+			if (bestGroup == null) {
+				log.error("Недостаточно грузовиков для погрузки ряда {}", readyPack.getShape().getForm());
+				continue;
+			}
+			trucks.open(bestGroup.truckIndexes.get(bestBin)).getPackages().add(readyPack);
+			bestGroup.index.update(bestBin, bestGroup.index.capacity(bestBin) - readyPack.getHeight());
+		}
+		return trucks;
+	}
+
+	/**
+	 * Сравнивает двух кандидатов на погрузку из разных групп грузовиков.
+	 *
+	 * @return true, если первый кандидат лучше второго.
+	 */
+	private static boolean isBetter(TruckGroup group, int bin, TruckGroup otherGroup, int otherBin, boolean bestFit) {
+		int truckIndex = group.truckIndexes.get(bin);
+		int otherTruckIndex = otherGroup.truckIndexes.get(otherBin);
+		if (bestFit) {
+			int capacity = group.index.capacity(bin);
+			int otherCapacity = otherGroup.index.capacity(otherBin);
+			if (capacity != otherCapacity) {
+				return capacity < otherCapacity;
+			}
+		}
+		return truckIndex < otherTruckIndex;
+	}
+
+	/**
+	 * Возвращает копию списка посылок, отсортированную по убывающему ключу с сохранением порядка равных.
+	 *
+	 * @param packages список посылок.
+	 * @param key убывающий ключ сортировки.
+	 * @return отсортированная копия.
+	 */
+	private static List<Package> sortDecreasing(List<Package> packages, PackageOrder.Key key) {
+		return PackageOrder.of(key).sort(packages, Package::getShape);
+	}
+
+	/**
+	 * Группа грузовиков одной ширины с индексом остатка высоты.
+	 */
+	private static class TruckGroup {
+
+		private final CapacityIndex index;
+		private final List<Integer> truckIndexes = new ArrayList<>();
+
+		private TruckGroup(boolean bestFit) {
+			this.index = CapacityIndex.create(bestFit);
+		}
+
+	}
+
+	/**
+	 * Прерывает погрузку, если поток погрузки прерван, например стратегия портфеля отменена по бюджету времени.
+	 *
+	 * @throws CustomException если поток прерван.
+	 */
+	private static void checkInterrupted() {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new CustomException("Погрузка прервана");
+		}
+	}
+
+	/**
+	 * Проверяет по размерам кузова и свободным клеткам, может ли грузовик вместить посылку.
+	 * Грузовик при этом не открывается.
+	 *
+	 * @param trucks парк грузовиков.
+	 * @param index номер грузовика.
+	 * @param shape форма посылки.
+	 * @return false, если посылка заведомо не помещается.
+	 */
+	private static boolean canHold(Fleet trucks, int index, Shape shape) {
+		return shape.getHeight() <= trucks.heightOf(index) && shape.getWidth() <= trucks.widthOf(index)
+				&& shape.getCellCount() <= trucks.freeCellsOf(index);
+	}
+
+	/**
+	 * Ищет самую нижнюю, затем самую левую свободную позицию для посылки и размещает её там.
+	 * Позиции перебираются начиная с заданной: сетка только заполняется, поэтому позиции, где такая же
+	 * форма не поместилась раньше, можно пропустить.
+	 *
+	 * @param truck грузовик.
+	 * @param readyPack посылка.
+	 * @param start первая проверяемая позиция, y * ширина кузова + x.
+	 * @return позиция размещения или -1, если посылка не помещается.
+	 */
+	private int placeBottomLeft(Truck truck, Package readyPack, int start) {
+		Shape shape = readyPack.getShape();
+		if (truck.getFreeCells() < shape.getCellCount()) {
+			return -1;
+		}
+		OccupancyGrid grid = truck.getGrid();
+		for (int y = start / truck.getWidth(); y + shape.getHeight() <= truck.getHeight(); y++) {
+			int firstX = y == start / truck.getWidth() ? start % truck.getWidth() : 0;
+			for (int x = firstX; x + shape.getWidth() <= truck.getWidth(); x++) {
+				if (grid.fits(shape, x, y)) {
+					truck.place(readyPack, x, y);
+					return y * truck.getWidth() + x;
+				}
+			}
+		}
+		return -1;
+	}
+
 	/**
 	 * Вычисляет доступное вертикальное пространство в грузовике на основе его упаковок.
 	 *
@@ -184,34 +718,143 @@ public class TruckService {
 	 * @return Строка JSON, представляющая грузовики и их упаковки.
 	 */
 	public String createJsonForTruck(List<Truck> truckArrayList) {
+		StringWriter writer = new StringWriter();
+		writeJsonForTruck(truckArrayList, writer);
+		log.debug("Полученный json: {}", writer);
+		return writer.toString();
+	}
+
+	/**
+	 * Потоково записывает JSON-репрезентацию грузовиков в указанный поток без построения промежуточного дерева и строки.
+	 * Формат совпадает с {@link TruckPackageJson}. Поток после записи не закрывается.
+	 *
+	 * @param truckArrayList Список объектов Truck для преобразования в JSON. Если null, записывается пустой JSON.
+	 * @param writer поток для записи.
+	 */
+	public void writeJsonForTruck(List<Truck> truckArrayList, Writer writer) {
 		log.info("Формирование json...");
-		String trucks;
-		ArrayList<TruckPackageJson.Truck> truck = new ArrayList<>();
-		if(truckArrayList != null) {
-			for (int i = 0; i <= truckArrayList.size()-1; i++) {
-				ArrayList<TruckPackageJson.Order> packages = new ArrayList<>();
-				if(!truckArrayList.get(i).getPackages().isEmpty()) {
-					for (int j = 0; j <= truckArrayList.get(i).getPackages().size() - 1; j++) {
-						String[] packing = truckArrayList.get(i).getPackages().get(j).getPack();
-						StringBuilder pack = new StringBuilder();
-						for (String s : packing) {
-							pack.append(s.replace("\n", ":")).append(":");
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.writeStartObject();
+			generator.writeArrayFieldStart("trucks");
+			if (truckArrayList != null) {
+				for (Truck truck : Fleet.loaded(truckArrayList)) {
+					if (truck.getPackages().isEmpty()) {
+						continue;
+					}
+					generator.writeStartObject();
+					if (truck.getPlacements().isEmpty()) {
+						generator.writeArrayFieldStart("packages");
+						for (Package aPackage : truck.getPackages()) {
+							generator.writeStartObject();
+							generator.writeStringField("package", toJsonForm(aPackage));
+							generator.writeEndObject();
+						}
+					} else {
+						generator.writeNumberField("height", truck.getHeight());
+						generator.writeNumberField("width", truck.getWidth());
+						generator.writeArrayFieldStart("packages");
+						for (Placement placement : truck.getPlacements()) {
+							writePlacedPackage(generator, toJsonForm(placement.getPack()), placement.getX(), placement.getY());
 						}
-						String pack2 = pack.toString().replace("::", ":");
-						packages.add(TruckPackageJson.Order.builder().order(pack2.substring(0, pack2.length() - 1)).build());
 					}
-					truck.add(TruckPackageJson.Truck.builder().orders(packages).build());
+					generator.writeEndArray();
+					generator.writeEndObject();
 				}
 			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		} catch (IOException e) {
+			throw new CustomException("Ошибка формирования json", e);
 		}
-		try {
-			trucks = new ObjectMapper().writeValueAsString(TruckPackageJson.builder().trucks(truck).build());
-		} catch (JsonProcessingException e) {
+	}
+
+	/**
+	 * Потоково записывает JSON-репрезентацию плана погрузки партии в том же формате,
+	 * что и {@link #writeJsonForTruck(List, Writer)}. Посылки грузовика перечисляются в порядке размещения.
+	 * Поток после записи не закрывается.
+	 *
+	 * @param plan план погрузки партии.
+	 * @param writer поток для записи.
+	 */
+	public void writeJsonForPlan(PackagePlan plan, Writer writer) {
+		log.info("Формирование json...");
+		PackageBatch batch = plan.getBatch();
+		String[] forms = new String[batch.getCatalog().length];
+		for (int id = 0; id < forms.length; id++) {
+			forms[id] = toJsonForm(new Package(batch.getCatalog()[id]));
+		}
+		int truckCount = plan.getTruckHeights().length;
+		int[] offsets = new int[truckCount + 1];
+		int[] byTruck = plan.groupByTruck(offsets);
+
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)) {
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.writeStartObject();
+			generator.writeArrayFieldStart("trucks");
+			for (int t = 0; t < truckCount; t++) {
+				if (offsets[t] == offsets[t + 1]) {
+					continue;
+				}
+				generator.writeStartObject();
+				generator.writeNumberField("height", plan.getTruckHeights()[t]);
+				generator.writeNumberField("width", plan.getTruckWidths()[t]);
+				generator.writeArrayFieldStart("packages");
+				for (int i = offsets[t]; i < offsets[t + 1]; i++) {
+					int index = byTruck[i];
+					writePlacedPackage(generator, forms[batch.getShapeIds()[index]], plan.getXs()[index], plan.getYs()[index]);
+				}
+				generator.writeEndArray();
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		} catch (IOException e) {
 			throw new CustomException("Ошибка формирования json", e);
 		}
-		log.info("Полученный json: "+trucks);
-		return trucks;
 	}
 
+	/**
+	 * Возвращает форму посылки для JSON: строки, разделённые двоеточием.
+	 * Если строки не содержат переводов строк и пустых строк, используется готовая форма из {@link Shape}.
+	 *
+	 * @param aPackage посылка.
+	 * @return форма посылки в одну строку.
+	 */
+	private String toJsonForm(Package aPackage) {
+		String[] packing = aPackage.getPack();
+		boolean plain = true;
+		for (String s : packing) {
+			if (s.isEmpty() || s.indexOf('\n') >= 0) {
+				plain = false;
+				break;
+			}
+		}
+		if (plain) {
+			return aPackage.getShape().getForm();
+		}
+		StringBuilder pack = new StringBuilder();
+		for (String s : packing) {
+			pack.append(s.replace("\n", ":")).append(":");
+		}
+		String pack2 = pack.toString().replace("::", ":");
+		return pack2.substring(0, pack2.length() - 1);
+	}
+
+	/**
+	 * Записывает размещённую посылку: форму и координаты левого нижнего угла.
+	 *
+	 * @param generator генератор JSON.
+	 * @param form форма посылки в одну строку.
+	 * @param x левый столбец посылки.
+	 * @param y нижний ряд посылки.
+	 */
+	private static void writePlacedPackage(JsonGenerator generator, String form, int x, int y) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("package", form);
+		generator.writeNumberField("x", x);
+		generator.writeNumberField("y", y);
+		generator.writeEndObject();
+	}
 
 }
@@ -0,0 +1,97 @@
+package ru.liga.packagetruckspring.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.liga.packagetruckspring.model.UnloadReport;
+import ru.liga.packagetruckspring.packing.FormIndex;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Сервис разгрузки: восстанавливает по файлу результата погрузки, какие посылки каталога везёт каждый грузовик.
+ * Файл читается потоково, формы посылок распознаются по хэш-индексу форм каталога без создания строк.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UnloadService {
+
+	/**
+	 * Имя для посылок, формы которых нет в каталоге, например составных посылок комплексного режима.
+	 */
+	public static final String UNRECOGNIZED = "нераспознанные";
+
+	private final StructureService structureService;
+	private final FileService fileService;
+	private final MetricsService metricsService;
+
+	/**
+	 * Разгружает файл результата погрузки.
+	 *
+	 * @param filePath путь до файла результата.
+	 * @param truckConsumer обработчик состава каждого грузовика: номер грузовика, начиная с 1,
+	 *                      и количество посылок по именам в порядке их первого появления в грузовике.
+	 * @return итог разгрузки по всем грузовикам.
+	 */
+	public UnloadReport unload(String filePath, BiConsumer<Integer, Map<String, Integer>> truckConsumer) {
+		Map<String, String> namesByForm = structureService.getNamesByForm();
+		FormIndex index = new FormIndex(new ArrayList<>(namesByForm.keySet()));
+		String[] names = namesByForm.values().toArray(new String[0]);
+		int unknown = names.length;
+		int[] counts = new int[names.length + 1];
+		long[] totals = new long[names.length + 1];
+		int[] touched = new int[names.length + 1];
+		int[] state = new int[2];
+
+		int trucks = metricsService.recordStage("unload", () -> fileService.streamResultPackages(filePath,
+				new FileService.ResultListener() {
+					@Override
+					public void onPackage(char[] form, int offset, int length) {
+						int id = index.find(form, offset, length);
+						if (id < 0) {
+							id = unknown;
+						}
+						if (counts[id]++ == 0) {
+							touched[state[1]++] = id;
+						}
+					}
+
+					@Override
+					public void onTruckEnd() {
+						Map<String, Integer> loaded = new LinkedHashMap<>();
+						for (int i = 0; i < state[1]; i++) {
+							int id = touched[i];
+							loaded.put(id == unknown ? UNRECOGNIZED : names[id], counts[id]);
+							totals[id] += counts[id];
+							counts[id] = 0;
+						}
+						state[1] = 0;
+						truckConsumer.accept(++state[0], loaded);
+					}
+				}));
+
+		Map<String, Long> result = new LinkedHashMap<>();
+		long packages = 0;
+		for (int id = 0; id < names.length; id++) {
+			if (totals[id] > 0) {
+				result.put(names[id], totals[id]);
+				packages += totals[id];
+			}
+		}
+		if (totals[unknown] > 0) {
+			log.warn("Не распознано посылок: {}", totals[unknown]);
+		}
+		log.info("Разгружено грузовиков: {}, посылок: {}", trucks, packages + totals[unknown]);
+		return UnloadReport.builder()
+				.trucks(trucks)
+				.packages(packages + totals[unknown])
+				.unrecognized(totals[unknown])
+				.totals(result)
+				.build();
+	}
+
+}
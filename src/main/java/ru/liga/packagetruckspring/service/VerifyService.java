@@ -0,0 +1,179 @@
+package ru.liga.packagetruckspring.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import ru.liga.packagetruckspring.model.Fleet;
+import ru.liga.packagetruckspring.model.Package;
+import ru.liga.packagetruckspring.model.PackageBatch;
+import ru.liga.packagetruckspring.model.PackagePlan;
+import ru.liga.packagetruckspring.model.Placement;
+import ru.liga.packagetruckspring.model.Shape;
+import ru.liga.packagetruckspring.model.Truck;
+import ru.liga.packagetruckspring.model.TruckPackageJson;
+import ru.liga.packagetruckspring.model.Violation;
+import ru.liga.packagetruckspring.packing.PlanVerifier;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Сервис проверки физической корректности плана погрузки: посылки не выходят за границы кузова,
+ * не пересекаются и погружены ровно по одному разу.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VerifyService {
+
+	private final FileService fileService;
+	private final MetricsService metricsService;
+
+	/**
+	 * Проверяет грузовики плана погрузки.
+	 * Посылки с координатами проверяются по битовой сетке кузова, посылки без координат - как стопка.
+	 * Посылка, погруженная в план повторно, считается нарушением.
+	 *
+	 * @param trucks грузовики плана.
+	 * @param order формы посылок заказа или null, если состав плана не сверяется с заказом.
+	 * @return найденные нарушения.
+	 */
+	public List<Violation> verifyTrucks(List<Truck> trucks, List<Shape> order) {
+		PlanVerifier verifier = new PlanVerifier();
+		Set<Package> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		Map<String, Integer> loaded = new HashMap<>();
+		for (Map.Entry<Integer, Truck> entry : Fleet.numbered(trucks).entrySet()) {
+			int number = entry.getKey() + 1;
+			Truck truck = entry.getValue();
+			if (truck.getPackages().isEmpty()) {
+				continue;
+			}
+			verifier.beginTruck(number, truck.getHeight(), truck.getWidth());
+			if (truck.getPlacements().isEmpty()) {
+				for (Package aPackage : truck.getPackages()) {
+					checkOnce(verifier, seen, number, aPackage);
+					verifier.stack(aPackage.getShape());
+					loaded.merge(aPackage.getShape().getForm(), 1, Integer::sum);
+				}
+			} else {
+				for (Placement placement : truck.getPlacements()) {
+					checkOnce(verifier, seen, number, placement.getPack());
+					verifier.place(placement.getPack().getShape(), placement.getX(), placement.getY());
+					loaded.merge(placement.getPack().getShape().getForm(), 1, Integer::sum);
+				}
+			}
+		}
+		return finish(verifier, loaded, order);
+	}
+
+	/**
+	 * Проверяет план погрузки партии посылок, не создавая объектов посылок.
+	 * Посылки каждого грузовика проверяются по битовой сетке кузова в порядке размещения.
+	 *
+	 * @param plan план погрузки партии.
+	 * @return найденные нарушения.
+	 */
+	public List<Violation> verifyPlan(PackagePlan plan) {
+		PlanVerifier verifier = new PlanVerifier();
+		PackageBatch batch = plan.getBatch();
+		int truckCount = plan.getTruckHeights().length;
+		int[] offsets = new int[truckCount + 1];
+		int[] byTruck = plan.groupByTruck(offsets);
+		for (int t = 0; t < truckCount; t++) {
+			if (offsets[t] == offsets[t + 1]) {
+				continue;
+			}
+			verifier.beginTruck(t + 1, plan.getTruckHeights()[t], plan.getTruckWidths()[t]);
+			for (int i = offsets[t]; i < offsets[t + 1]; i++) {
+				int index = byTruck[i];
+				verifier.place(batch.getShape(index), plan.getXs()[index], plan.getYs()[index]);
+			}
+		}
+		return finish(verifier, Collections.emptyMap(), null);
+	}
+
+	/**
+	 * Проверяет файл результата погрузки, читая его потоково.
+	 * Геометрия проверяется для грузовиков, в которых записаны размеры кузова; для остальных сверяется только состав.
+	 *
+	 * @param filePath путь до файла результата.
+	 * @param order формы посылок заказа или null, если состав плана не сверяется с заказом.
+	 * @return найденные нарушения.
+	 */
+	public List<Violation> verifyFile(String filePath, List<Shape> order) {
+		PlanVerifier verifier = new PlanVerifier();
+		Map<String, Shape> shapes = new HashMap<>();
+		Map<String, Integer> loaded = new HashMap<>();
+		int[] number = new int[1];
+		fileService.streamResultTrucks(filePath, truck -> {
+			number[0]++;
+			if (truck.getOrders() == null) {
+				return;
+			}
+			boolean sized = truck.getHeight() != null && truck.getWidth() != null;
+			if (sized) {
+				verifier.beginTruck(number[0], truck.getHeight(), truck.getWidth());
+			}
+			for (TruckPackageJson.Order entry : truck.getOrders()) {
+				String form = entry.getOrder();
+				if (form == null || form.isEmpty()) {
+					verifier.report(number[0], "посылка без формы");
+					continue;
+				}
+				loaded.merge(form, 1, Integer::sum);
+				if (!sized) {
+					continue;
+				}
+				Shape shape = shapes.computeIfAbsent(form, key -> Shape.of(key.split(":")));
+				if (entry.getX() != null && entry.getY() != null) {
+					verifier.place(shape, entry.getX(), entry.getY());
+				} else {
+					verifier.stack(shape);
+				}
+			}
+		});
+		return finish(verifier, loaded, order);
+	}
+
+	private void checkOnce(PlanVerifier verifier, Set<Package> seen, int truck, Package aPackage) {
+		if (!seen.add(aPackage)) {
+			verifier.report(truck, "посылка " + aPackage.getShape().getForm() + " погружена повторно");
+		}
+	}
+
+	/**
+	 * Сверяет погруженные формы с заказом и записывает итог проверки.
+	 */
+	private List<Violation> finish(PlanVerifier verifier, Map<String, Integer> loaded, List<Shape> order) {
+		List<Violation> violations = verifier.getViolations();
+		if (order != null) {
+			Map<String, Integer> ordered = new TreeMap<>();
+			for (Shape shape : order) {
+				ordered.merge(shape.getForm(), 1, Integer::sum);
+			}
+			Map<String, Integer> extra = new TreeMap<>(loaded);
+			ordered.forEach((form, count) -> {
+				int placed = extra.getOrDefault(form, 0);
+				extra.remove(form);
+				if (placed != count) {
+					verifier.report(Violation.NONE, "посылка " + form + ": в заказе " + count + ", погружено " + placed);
+				}
+			});
+			extra.forEach((form, count) ->
+					verifier.report(Violation.NONE, "посылка " + form + " погружена " + count + " раз, но её нет в заказе"));
+		}
+		metricsService.recordViolations(violations.size());
+		if (violations.isEmpty()) {
+			log.info("План погрузки корректен");
+		} else {
+			log.error("В плане погрузки найдено нарушений: {}", violations.size());
+		}
+		return violations;
+	}
+
+}
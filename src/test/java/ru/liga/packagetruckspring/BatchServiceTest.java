@@ -0,0 +1,116 @@
+package ru.liga.packagetruckspring;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.liga.packagetruckspring.exception.CustomException;
+import ru.liga.packagetruckspring.model.BatchOrder;
+import ru.liga.packagetruckspring.model.BatchReport;
+import ru.liga.packagetruckspring.model.Structure;
+import ru.liga.packagetruckspring.repository.StructureRepository;
+import ru.liga.packagetruckspring.service.BatchService;
+import ru.liga.packagetruckspring.service.FileService;
+import ru.liga.packagetruckspring.service.MetricsService;
+import ru.liga.packagetruckspring.service.PackageService;
+import ru.liga.packagetruckspring.service.PackingResultCache;
+import ru.liga.packagetruckspring.service.PackingService;
+import ru.liga.packagetruckspring.service.StructureService;
+import ru.liga.packagetruckspring.service.TruckService;
+import ru.liga.packagetruckspring.service.VerifyService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = "spring.shell.interactive.enabled=false")
+class BatchServiceTest {
+
+    private BatchService batchService;
+
+    @BeforeEach
+    void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        PackingResultCache packingResultCache = new PackingResultCache();
+        StructureService structureService = new StructureService(new StructureRepository(), packingResultCache);
+        Structure square = new Structure();
+        square.setName("Квадрат");
+        square.setForm("999:999:999");
+        square.setSymbol("9");
+        structureService.saveStructure(square);
+        MetricsService metricsService = new MetricsService(new SimpleMeterRegistry());
+        FileService fileService = new FileService(objectMapper);
+        TruckService truckService = new TruckService(objectMapper);
+        PackingService packingService = new PackingService(structureService, new PackageService(),
+                truckService, metricsService, packingResultCache, new VerifyService(fileService, metricsService));
+        batchService = new BatchService(structureService, packingService, truckService, fileService);
+    }
+
+    @Test
+    void testPackBatchWritesResultsAndCountsFailedOrders(@TempDir Path dir) {
+        BatchReport report = batchService.packBatch(List.of(
+                order("first", "Квадрат", "6x6"),
+                order(null, "Квадрат", "6x6"),
+                order("broken", "Квадрат", "размер")), dir.toString(), 2);
+
+        assertThat(report.getOrders()).isEqualTo(3);
+        assertThat(report.getFailed()).isEqualTo(1);
+        assertThat(dir.resolve("first.json")).exists();
+        assertThat(dir.resolve("order-2.json")).exists();
+        assertThat(dir.resolve("broken.json")).doesNotExist();
+        assertThat(report.getMaxMillis()).isGreaterThanOrEqualTo(report.getP99Millis())
+                .isGreaterThanOrEqualTo(report.getP50Millis());
+    }
+
+    @Test
+    void testOrdersSharingResultFileAreRejected(@TempDir Path dir) throws Exception {
+        Path output = dir.resolve("out");
+        assertThatThrownBy(() -> batchService.packBatch(List.of(order("a/b", "Квадрат", "6x6"),
+                order("a_b", "Квадрат", "6x6")), output.toString(), 1))
+                .isInstanceOf(CustomException.class)
+                .hasMessageContaining("a_b.json");
+        assertThatThrownBy(() -> batchService.packBatch(List.of(order("same", "Квадрат", "6x6"),
+                order("SAME", "Квадрат", "6x6")), output.toString(), 1))
+                .isInstanceOf(CustomException.class);
+        assertThatThrownBy(() -> batchService.packBatch(List.of(order("order-2", "Квадрат", "6x6"),
+                order(null, "Квадрат", "6x6")), output.toString(), 1))
+                .isInstanceOf(CustomException.class);
+        assertThat(Files.exists(output)).isFalse();
+    }
+
+    @Test
+    void testEmptyBatchReportsZeroLatencies(@TempDir Path dir) {
+        BatchReport report = batchService.packBatch(List.of(), dir.toString(), 1);
+        assertThat(report.getOrders()).isZero();
+        assertThat(report.getFailed()).isZero();
+        assertThat(report.getP50Millis()).isZero();
+        assertThat(report.getMaxMillis()).isZero();
+    }
+
+    @Test
+    void testPercentileUsesNearestRank() {
+        long[] sorted = {1_000_000, 2_000_000, 3_000_000, 4_000_000, 5_000_000,
+                6_000_000, 7_000_000, 8_000_000, 9_000_000, 10_000_000};
+        assertThat(BatchService.percentile(sorted, 50)).isEqualTo(5.0);
+        assertThat(BatchService.percentile(sorted, 90)).isEqualTo(9.0);
+        assertThat(BatchService.percentile(sorted, 91)).isEqualTo(10.0);
+        assertThat(BatchService.percentile(sorted, 99)).isEqualTo(10.0);
+        assertThat(BatchService.percentile(sorted, 0)).isEqualTo(1.0);
+        assertThat(BatchService.percentile(new long[]{7_000_000}, 50)).isEqualTo(7.0);
+        assertThat(BatchService.percentile(new long[0], 99)).isZero();
+    }
+
+    private static BatchOrder order(String id, String listName, String size) {
+        BatchOrder order = new BatchOrder();
+        order.setId(id);
+        order.setListName(listName);
+        order.setSize(size);
+        return order;
+    }
+
+}
@@ -3,11 +3,17 @@ package ru.liga.packagetruckspring;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.test.context.SpringBootTest;
 import ru.liga.packagetruckspring.exception.CustomException;
 import ru.liga.packagetruckspring.model.Structure;
 import ru.liga.packagetruckspring.service.FileService;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -16,8 +22,9 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 @SpringBootTest(properties = "spring.shell.interactive.enabled=false")
 class FileServiceTest {
 
-    private final String testFile = System.getProperty("user.dir") + "\\src\\test\\resources\\test.json";
-    private final String testFileError = System.getProperty("user.dir") + "\\src\\test\\resources\\error.json";
+    private final String testFile = Paths.get(System.getProperty("user.dir"), "src", "test", "resources", "test.json").toString();
+    private final String testFileError = Paths.get(System.getProperty("user.dir"), "src", "test", "resources", "error.json").toString();
+    private final String testFileInvalid = Paths.get(System.getProperty("user.dir"), "src", "test", "resources", "invalid.json").toString();
     private FileService fileService;
 
     @BeforeEach
@@ -26,27 +33,63 @@ class FileServiceTest {
     }
 
     @Test
-    void testReadFileJson() {
-        List<Structure> list = fileService.readFileData(testFile);
-        String name = "";
-        String form = "";
-        String symbol = "";
-        for (Structure structure : list) {
-            name = structure.getName();
-            form = structure.getForm();
-            symbol = structure.getSymbol();
-        }
-        assertThat(name.equals("Пять")).isTrue();
-        assertThat(form.equals("55555:55555")).isTrue();
-        assertThat(symbol.equals("5")).isTrue();
+    void testFailReadFileJson() {
+        assertThatThrownBy(() -> fileService.streamFileData(testFileError, structure -> {
+        }))
+                .isInstanceOf(CustomException.class)
+                .hasMessageContaining("Ошибка чтения файла");
     }
 
     @Test
-    void testFailReadFileJson() {
-        assertThatThrownBy(() -> fileService.readFileData(testFileError))
+    void testStreamFileJson() {
+        List<Structure> list = new ArrayList<>();
+        int count = fileService.streamFileData(testFile, list::add);
+        assertThat(count).isEqualTo(1);
+        assertThat(list.get(0).getName()).isEqualTo("Пять");
+        assertThat(list.get(0).getForm()).isEqualTo("55555:55555");
+    }
+
+    @Test
+    void testStreamFileJsonReportsInvalidEntry() {
+        List<Structure> list = new ArrayList<>();
+        assertThatThrownBy(() -> fileService.streamFileData(testFileInvalid, list::add))
                 .isInstanceOf(CustomException.class)
-                .hasMessageContaining("Ошибка чтения файла");
+                .hasMessageContaining("№2")
+                .hasMessageContaining("строка 7")
+                .hasMessageContaining("не задана форма");
+        assertThat(list).hasSize(1);
     }
 
+    @Test
+    void testStreamResultPackagesRejectsNonObjectPackage(@TempDir Path dir) throws Exception {
+        Path result = dir.resolve("result.json");
+        List<String> forms = new ArrayList<>();
+        FileService.ResultListener listener = new FileService.ResultListener() {
+            @Override
+            public void onPackage(char[] form, int offset, int length) {
+                forms.add(new String(form, offset, length));
+            }
+
+            @Override
+            public void onTruckEnd() {
+                forms.add("|");
+            }
+        };
+        Files.writeString(result, "{\"trucks\":[{\"packages\":[{\"package\":\"1\"},\"22\"]}]}", StandardCharsets.UTF_8);
+        assertThatThrownBy(() -> fileService.streamResultPackages(result.toString(), listener))
+                .isInstanceOf(CustomException.class)
+                .hasMessageContaining("ожидается объект посылки");
+        Files.writeString(result, "{\"trucks\":[{\"packages\":\"1\"}]}", StandardCharsets.UTF_8);
+        assertThatThrownBy(() -> fileService.streamResultPackages(result.toString(), listener))
+                .isInstanceOf(CustomException.class)
+                .hasMessageContaining("ожидается массив посылок");
+
+        forms.clear();
+        Files.writeString(result, "{\"size\":{\"a\":[1]},\"trucks\":[{\"packages\":null},"
+                + "{\"packages\":[{\"x\":0,\"package\":\"1\"}]}]}", StandardCharsets.UTF_8);
+        int trucks = fileService.streamResultPackages(result.toString(), listener);
+        assertThat(trucks).isEqualTo(2);
+        assertThat(forms).containsExactly("|", "1", "|");
+    }
 
 }
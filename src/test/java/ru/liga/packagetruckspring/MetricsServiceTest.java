@@ -0,0 +1,121 @@
+package ru.liga.packagetruckspring;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.liga.packagetruckspring.model.Package;
+import ru.liga.packagetruckspring.model.PackingMode;
+import ru.liga.packagetruckspring.model.PackingResult;
+import ru.liga.packagetruckspring.model.Shape;
+import ru.liga.packagetruckspring.model.Truck;
+import ru.liga.packagetruckspring.repository.StructureRepository;
+import ru.liga.packagetruckspring.service.FileService;
+import ru.liga.packagetruckspring.service.MetricsService;
+import ru.liga.packagetruckspring.service.PackageService;
+import ru.liga.packagetruckspring.service.PackingResultCache;
+import ru.liga.packagetruckspring.service.PackingService;
+import ru.liga.packagetruckspring.service.StructureService;
+import ru.liga.packagetruckspring.service.TruckService;
+import ru.liga.packagetruckspring.service.VerifyService;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+@SpringBootTest(properties = "spring.shell.interactive.enabled=false")
+class MetricsServiceTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private MetricsService metricsService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        metricsService = new MetricsService(meterRegistry);
+    }
+
+    @Test
+    void testRecordStageTimesEveryCall() {
+        assertThat(metricsService.recordStage("sort", () -> 42)).isEqualTo(42);
+        int[] runs = new int[1];
+        metricsService.recordStage("sort", () -> {
+            runs[0]++;
+        });
+        metricsService.recordStage("pack-grid", () -> runs[0]++);
+
+        assertThat(runs[0]).isEqualTo(2);
+        assertThat(meterRegistry.get(MetricsService.STAGE_TIMER).tag("stage", "sort").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get(MetricsService.STAGE_TIMER).tag("stage", "pack-grid").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testCountsAndFillRatioIgnoreEmptyTrucks() {
+        List<Truck> trucks = List.of(loaded(3, 3, "999:999:999"), new Truck(3, 3), loaded(2, 4, "88:88", "1"),
+                new Truck(6, 6));
+
+        assertThat(metricsService.countUsedTrucks(trucks)).isEqualTo(2);
+        assertThat(metricsService.countPackages(trucks)).isEqualTo(3);
+        assertThat(metricsService.countUnusedTrucks(trucks)).containsExactly(entry("3x3", 1), entry("6x6", 1));
+        assertThat(metricsService.fillRatio(trucks)).isEqualTo(14.0 / 17);
+        assertThat(metricsService.fillRatio(List.of(new Truck(3, 3)))).isZero();
+        assertThat(metricsService.countUsedTrucks(List.of())).isZero();
+    }
+
+    @Test
+    void testPackageCountersCountEveryPackageOfMergedRow() {
+        PackingResultCache packingResultCache = new PackingResultCache();
+        PackingService packingService = new PackingService(
+                new StructureService(new StructureRepository(), packingResultCache), new PackageService(),
+                new TruckService(new ObjectMapper()), metricsService, packingResultCache,
+                new VerifyService(new FileService(new ObjectMapper()), metricsService));
+        List<Shape> order = List.of(Shape.compile("1:1", "1"), Shape.compile("#   #:#####:#   #", "#"),
+                Shape.compile("22", "2"), Shape.compile("999:999:999", "9"), Shape.compile("22", "2"),
+                Shape.compile("333", "3"), Shape.compile("1:1", "1"));
+
+        PackingResult result = packingService.pack(PackingMode.FFD, order, "6x6*1");
+
+        double placed = meterRegistry.get(MetricsService.PACKAGES_PLACED).counter().count();
+        double unplaced = meterRegistry.get(MetricsService.PACKAGES_UNPLACED).counter().count();
+        assertThat(result.getTrucks().get(0).getPackages()).anySatisfy(aPackage ->
+                assertThat(aPackage.getCount()).isGreaterThan(1));
+        assertThat(placed).isEqualTo(metricsService.countPackages(result.getTrucks())).isEqualTo(4);
+        assertThat(unplaced).isEqualTo(result.getUnplaced()).isEqualTo(3);
+
+        Truck merged = loaded(3, 3, "1");
+        merged.getPackages().add(new Package(Shape.compile("22:22", "2"), 3));
+        assertThat(metricsService.countPackages(List.of(merged))).isEqualTo(4);
+    }
+
+    @Test
+    void testReportListsRecordedMetricsSortedByName() {
+        List<Truck> trucks = List.of(loaded(3, 3, "999:999:999"), new Truck(6, 6));
+        metricsService.recordResult(trucks, 2);
+        metricsService.recordResult(trucks, 0);
+        metricsService.recordCacheLookup(true);
+        metricsService.recordStage("sort", () -> 0);
+
+        String[] lines = metricsService.report().split(System.lineSeparator());
+
+        assertThat(lines).filteredOn(line -> !line.startsWith(MetricsService.STAGE_TIMER)).containsExactly(
+                "pack.cache.lookups[result=hit] 1",
+                "pack.fill.ratio count=2 mean=1.000 max=1.000",
+                "pack.packages.placed 2",
+                "pack.packages.unplaced 2",
+                "pack.trucks.unused[type=6x6] 2",
+                "pack.trucks.used 2");
+        assertThat(lines[4]).startsWith("pack.stage[stage=sort] count=1 total=");
+        assertThat(new MetricsService(new SimpleMeterRegistry()).report()).isEmpty();
+    }
+
+    private static Truck loaded(int height, int width, String... forms) {
+        Truck truck = new Truck(height, width);
+        for (String form : forms) {
+            truck.getPackages().add(new Package(Shape.compile(form, form.substring(0, 1))));
+        }
+        return truck;
+    }
+
+}
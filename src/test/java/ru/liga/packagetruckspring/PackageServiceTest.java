@@ -5,12 +5,15 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.boot.test.context.SpringBootTest;
+import ru.liga.packagetruckspring.exception.CustomException;
 import ru.liga.packagetruckspring.model.Package;
+import ru.liga.packagetruckspring.model.PackageBatch;
+import ru.liga.packagetruckspring.model.Shape;
 import ru.liga.packagetruckspring.model.Truck;
+import ru.liga.packagetruckspring.packing.PackageOrder;
 import ru.liga.packagetruckspring.repository.PackageRepository;
 import ru.liga.packagetruckspring.service.PackageService;
 
@@ -25,19 +28,28 @@ class PackageServiceTest {
 	@Mock
 	private PackageRepository packageRepository;
 
-	@InjectMocks
-	private PackageService packageService;
+	private final PackageService packageService = new PackageService();
 
 	@Test
 	void testSortSimpleOrders() {
 		List<String> unassembledPackagesList = Arrays.asList("AAA:AA:AA", "D:D:DDD");
 		doNothing().when(packageRepository).clear();
-		List<Package> sortedPackages = packageService.sortSimpleOrders(unassembledPackagesList);
+		List<Package> sortedPackages = packageService.sortSimpleOrders(packageRepository, unassembledPackagesList);
 		verify(packageRepository, times(1)).clear();
 		verify(packageRepository, times(2)).save(any(Package.class));
 		assertNotNull(sortedPackages);
 	}
 
+	@Test
+	void testSortSimpleShapes() {
+		Shape shape = Shape.compile("777:7777", "7");
+		List<Package> sortedPackages = packageService.sortSimpleShapes(packageRepository, Arrays.asList(shape, shape));
+		verify(packageRepository, times(1)).clear();
+		verify(packageRepository, times(2)).save(argThat(pack -> pack.getShape() == shape
+				&& pack.getHeight() == 2 && pack.getWidthTop() == 3 && pack.getWidthBottom() == 4));
+		assertNotNull(sortedPackages);
+	}
+
 	@Test
 	void testSortComplexOrders() {
 		List<Truck> truckList = new ArrayList<>();
@@ -54,10 +66,44 @@ class PackageServiceTest {
 		truckList.add(truck1);
 		truckList.add(truck2);
 		doNothing().when(packageRepository).clear();
-		List<Package> sortedPackages = packageService.sortComplexOrders(truckList);
+		List<Package> sortedPackages = packageService.sortComplexOrders(packageRepository, truckList);
 		verify(packageRepository, times(1)).clear();
 		verify(packageRepository, times(2)).save(any(Package.class));
 		assertNotNull(sortedPackages);
 	}
 
+	@Test
+	void testSortComplexOrdersMergesWholeTruck() {
+		Truck truck = new Truck(5, 10);
+		truck.getPackages().add(new Package(Shape.compile("888:8  ", "8")));
+		truck.getPackages().add(new Package(Shape.compile("1", "1")));
+		truck.getPackages().add(new Package(Shape.compile("22:22", "2")));
+		packageService.sortComplexOrders(packageRepository, List.of(truck));
+		verify(packageRepository).save(argThat(pack -> pack.getShape().getForm().equals("88822:81 22")
+				&& pack.getShape().getCellCount() == 9 && pack.getHeight() == 2 && pack.getWidthBottom() == 5));
+
+		Shape wide = Shape.compose(List.of(Shape.compile("9".repeat(60), "9"), Shape.compile("77777", "7")));
+		assertEquals(65, wide.getWidth());
+		assertEquals(-1L, wide.getMask(0, 0));
+		assertEquals(1L, wide.getMask(0, 1));
+	}
+
+	@Test
+	void testSortBatchWithCompositeOrder() {
+		Shape tall = Shape.compile("1:1:1", "1");
+		Shape wide = Shape.compile("222:222", "2");
+		Shape square = Shape.compile("33:33", "3");
+		Shape point = Shape.compile("4", "4");
+		PackageBatch batch = PackageBatch.of(List.of(point, square, tall, wide, square));
+
+		assertArrayEquals(new int[]{0, 2, 1, 4, 3}, packageService.sortBatch(batch));
+		assertArrayEquals(new int[]{2, 3, 1, 4, 0},
+				packageService.sortBatch(batch, PackageOrder.parse("height-desc,width-desc")));
+		assertArrayEquals(new int[]{3, 1, 4, 2, 0}, packageService.sortBatch(batch, PackageOrder.parse("AREA_DESC")));
+		assertThrows(CustomException.class, () -> PackageOrder.parse("weight-desc"));
+
+		int[] keys = {Integer.MAX_VALUE, -5, 70000, -5, Integer.MIN_VALUE, 70000};
+		assertArrayEquals(new int[]{4, 1, 3, 2, 5, 0}, PackageBatch.sortByKey(new int[]{0, 1, 2, 3, 4, 5}, i -> keys[i]));
+	}
+
 }
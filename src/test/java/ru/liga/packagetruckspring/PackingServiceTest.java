@@ -0,0 +1,329 @@
+package ru.liga.packagetruckspring;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.liga.packagetruckspring.exception.CustomException;
+import ru.liga.packagetruckspring.model.Fleet;
+import ru.liga.packagetruckspring.model.Package;
+import ru.liga.packagetruckspring.model.PackageBatch;
+import ru.liga.packagetruckspring.model.PackagePlan;
+import ru.liga.packagetruckspring.model.PackingMode;
+import ru.liga.packagetruckspring.model.PackingResult;
+import ru.liga.packagetruckspring.model.Shape;
+import ru.liga.packagetruckspring.model.ShapeCount;
+import ru.liga.packagetruckspring.model.Structure;
+import ru.liga.packagetruckspring.model.Truck;
+import ru.liga.packagetruckspring.repository.StructureRepository;
+import ru.liga.packagetruckspring.service.FileService;
+import ru.liga.packagetruckspring.service.MetricsService;
+import ru.liga.packagetruckspring.service.PackageService;
+import ru.liga.packagetruckspring.service.PackingResultCache;
+import ru.liga.packagetruckspring.service.PackingService;
+import ru.liga.packagetruckspring.service.StructureService;
+import ru.liga.packagetruckspring.service.TruckService;
+import ru.liga.packagetruckspring.service.VerifyService;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = "spring.shell.interactive.enabled=false")
+class PackingServiceTest {
+
+    private StructureService structureService;
+    private PackingService packingService;
+    private PackingResultCache packingResultCache;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        packingResultCache = new PackingResultCache();
+        structureService = new StructureService(new StructureRepository(), packingResultCache);
+        meterRegistry = new SimpleMeterRegistry();
+        MetricsService metricsService = new MetricsService(meterRegistry);
+        packingService = new PackingService(structureService, new PackageService(),
+                new TruckService(new ObjectMapper()), metricsService, packingResultCache,
+                new VerifyService(new FileService(new ObjectMapper()), metricsService));
+    }
+
+    @Test
+    void testFitDecreasingModesPlaceWholeOrder() {
+        List<Shape> order = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            order.add(Shape.compile("999:999:999", "9"));
+            order.add(Shape.compile("1", "1"));
+            order.add(Shape.compile("22", "2"));
+        }
+        String size = "6x6,6x6,6x6,6x6,6x6,6x6";
+        PackingResult complex = packingService.pack(PackingMode.COMPLEX, order, size);
+        for (PackingMode mode : new PackingMode[]{PackingMode.FFD, PackingMode.BFD}) {
+            PackingResult result = packingService.pack(mode, order, size);
+            assertThat(result.getUnplaced()).isZero();
+            assertThat(usedTrucks(result)).isLessThanOrEqualTo(usedTrucks(complex));
+            assertThat(result.getTrucks()).allSatisfy(truck -> assertThat(truck.getPackages().stream()
+                    .mapToInt(aPackage -> aPackage.getHeight()).sum()).isLessThanOrEqualTo(truck.getHeight()));
+        }
+    }
+
+    @Test
+    void testOptimizeModeIsNotWorseThanSkyline() {
+        List<Shape> order = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            order.add(Shape.compile("88:8 ", "8"));
+            order.add(Shape.compile("7777", "7"));
+            order.add(Shape.compile("333", "3"));
+        }
+        String size = "4x4,4x4,4x4,4x4,4x4,4x4,4x4,4x4";
+        PackingResult skyline = packingService.pack(PackingMode.SKYLINE, order, size);
+        PackingResult optimized = packingService.pack(PackingMode.OPTIMIZE, order, size, Duration.ofMillis(300));
+        assertThat(optimized.getUnplaced()).isZero();
+        assertThat(usedTrucks(optimized)).isLessThanOrEqualTo(usedTrucks(skyline));
+    }
+
+    @Test
+    void testPortfolioKeepsBestStrategy() {
+        List<Shape> order = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            order.add(Shape.compile("1", "1"));
+            order.add(Shape.compile("22", "2"));
+        }
+        PackingResult result = packingService.pack(PackingMode.PORTFOLIO, order, "3x3,3x3,3x3,3x3,3x3,3x3,3x3,3x3,3x3,3x3,3x3,3x3");
+        assertThat(result.getStrategies()).hasSize(6);
+        assertThat(result.getUnplaced()).isZero();
+        long best = result.getStrategies().stream()
+                .filter(report -> report.isCompleted() && report.getUnplaced() == 0)
+                .mapToInt(report -> report.getTrucksUsed()).min().orElseThrow();
+        assertThat(usedTrucks(result)).isEqualTo(best);
+    }
+
+    @Test
+    void testPortfolioCountsEveryPackageOfUnplacedRow() {
+        List<Shape> order = List.of(Shape.compile("1:1", "1"), Shape.compile("#   #:#####:#   #", "#"),
+                Shape.compile("22", "2"), Shape.compile("999:999:999", "9"), Shape.compile("22", "2"),
+                Shape.compile("333", "3"), Shape.compile("1:1", "1"));
+        for (PackingMode mode : new PackingMode[]{PackingMode.FFD, PackingMode.BFD, PackingMode.COMPLEX}) {
+            PackingResult result = packingService.pack(mode, order, "6x6*1");
+            assertThat(result.getUnplaced()).as(mode.name()).isEqualTo(order.size() - placedPackages(result));
+        }
+        PackingResult ffd = packingService.pack(PackingMode.FFD, order, "6x6*1");
+        assertThat(ffd.getUnplaced()).isEqualTo(3);
+
+        PackingResult result = packingService.pack(PackingMode.PORTFOLIO, order, "6x6*1");
+        int leastUnplaced = result.getStrategies().stream()
+                .filter(report -> report.isCompleted())
+                .mapToInt(report -> report.getUnplaced()).min().orElseThrow();
+        assertThat(result.getUnplaced()).isEqualTo(leastUnplaced).isEqualTo(order.size() - placedPackages(result));
+        assertThat(result.getUnplaced()).isLessThan(ffd.getUnplaced());
+        assertThat(result.getMode()).isNotEqualTo(PackingMode.FFD);
+    }
+
+    @Test
+    void testExactModeProvesMinimalTruckCount() {
+        List<Shape> order = List.of(Shape.compile("11:1 ", "1"), Shape.compile(" 2:22", "2"),
+                Shape.compile("33:3 ", "3"), Shape.compile(" 4:44", "4"), Shape.compile("5", "5"));
+        PackingResult result = packingService.pack(PackingMode.EXACT, order, "2x3,2x3,2x3,2x3");
+        assertThat(result.getUnplaced()).isZero();
+        assertThat(result.isOptimal()).isTrue();
+        assertThat(usedTrucks(result)).isEqualTo(3);
+        assertThat(result.getTrucks()).allSatisfy(truck ->
+                assertThat(truck.getGrid().getOccupiedCells()).isEqualTo(truck.getPackages().stream()
+                        .mapToInt(aPackage -> aPackage.getShape().getCellCount()).sum()));
+    }
+
+    @Test
+    void testExactModeCountsLargePackagesThatCannotShareTruck() {
+        List<Shape> order = new ArrayList<>(Collections.nCopies(5, Shape.compile("999:999:999", "9")));
+        order.add(Shape.compile("1", "1"));
+        PackingResult result = packingService.pack(PackingMode.EXACT, order, "4x4*8");
+        assertThat(result.getUnplaced()).isZero();
+        assertThat(result.isOptimal()).isTrue();
+        assertThat(usedTrucks(result)).isEqualTo(5);
+    }
+
+    @Test
+    void testInfeasibleFleetIsRejectedBeforePacking() {
+        List<Shape> oversized = List.of(Shape.compile("1", "1"), Shape.compile("7777777", "7"));
+        assertThatThrownBy(() -> packingService.pack(PackingMode.SIMPLE, oversized, "6x6,6x6"))
+                .isInstanceOf(CustomException.class)
+                .hasMessageContaining("7777777");
+        List<Shape> tooMany = Collections.nCopies(5, Shape.compile("999:999:999", "9"));
+        assertThatThrownBy(() -> packingService.pack(PackingMode.PORTFOLIO, tooMany, "6x6"))
+                .isInstanceOf(CustomException.class)
+                .hasMessageContaining("45");
+    }
+
+    @Test
+    void testQuantityOrdersShareOneShape() {
+        structureService.saveStructure(structure("Квадрат", "999:999:999", "9"));
+        structureService.saveStructure(structure("Точка", "1", "1"));
+        List<ShapeCount> order = structureService.getOrderForName("Квадрат*1000,Точка");
+        assertThat(order).extracting(ShapeCount::getCount).containsExactly(1000, 1);
+
+        List<Shape> shapes = structureService.getShapesForName("Квадрат*1000,Точка");
+        assertThat(shapes).hasSize(1001);
+        assertThat(shapes.get(999)).isSameAs(shapes.get(0));
+        assertThat(shapes.get(1000).getForm()).isEqualTo("1");
+        assertThatThrownBy(() -> shapes.add(shapes.get(0))).isInstanceOf(UnsupportedOperationException.class);
+        assertThat(PackageBatch.ofRuns(order).getCatalog()).hasSize(2);
+
+        PackingResult result = packingService.pack(PackingMode.GRID, shapes.subList(0, 40),
+                "6x6,6x6,6x6,6x6,6x6,6x6,6x6,6x6,6x6,6x6");
+        assertThat(result.getUnplaced()).isZero();
+        assertThat(result.getTrucks()).allSatisfy(truck -> assertThat(truck.getPackages()).hasSize(4));
+        assertThatThrownBy(() -> structureService.getOrderForName("Квадрат*0"))
+                .isInstanceOf(CustomException.class);
+    }
+
+    @Test
+    void testFleetDescriptorCreatesOnlyLoadedTrucks() {
+        List<Shape> order = Collections.nCopies(40, Shape.compile("999:999:999", "9"));
+        for (PackingMode mode : new PackingMode[]{PackingMode.GRID, PackingMode.SKYLINE}) {
+            PackingResult result = packingService.pack(mode, order, "6x6*5000,10x12*200");
+            assertThat(result.getUnplaced()).isZero();
+            assertThat(result.getTrucks()).hasSize(5200).isInstanceOf(Fleet.class);
+            Fleet fleet = (Fleet) result.getTrucks();
+            assertThat(IntStream.range(0, fleet.size()).filter(fleet::isOpened).count()).isEqualTo(10);
+            assertThat(usedTrucks(result)).isEqualTo(10);
+            assertThat(fleet.iterator().next()).isSameAs(fleet.get(0));
+            assertThat(fleet.get(4999)).isSameAs(fleet.get(100)).isNotSameAs(fleet.get(5000));
+            assertThat(fleet.heightOf(5000)).isEqualTo(10);
+            assertThat(fleet.freeCellsOf(5000)).isEqualTo(120);
+            Truck view = fleet.get(100);
+            assertThatThrownBy(() -> view.place(new Package(order.get(0)), 0, 0))
+                    .isInstanceOf(UnsupportedOperationException.class);
+            assertThat(view.getOccupiedCells()).isZero();
+            assertThatThrownBy(view::getGrid).isInstanceOf(UnsupportedOperationException.class);
+            assertThat(fleet.isOpened(100)).isFalse();
+        }
+        assertThat(meterRegistry.get(MetricsService.TRUCKS_UNUSED).tag("type", "6x6").counter().count())
+                .isEqualTo(2 * 4990);
+        assertThat(meterRegistry.get(MetricsService.TRUCKS_UNUSED).tag("type", "10x12").counter().count())
+                .isEqualTo(2 * 200);
+        assertThatThrownBy(() -> packingService.pack(PackingMode.GRID, order, "6x6*0"))
+                .isInstanceOf(CustomException.class);
+    }
+
+    @Test
+    void testHugeFleetIsPackedByBlocks() {
+        List<Shape> order = Collections.nCopies(12, Shape.compile("999:999:999", "9"));
+        MetricsService metricsService = new MetricsService(new SimpleMeterRegistry());
+        for (PackingMode mode : PackingMode.values()) {
+            PackingResult result = packingService.pack(mode, order, "6x6*1000000000,10x12*1000000000");
+            Fleet fleet = (Fleet) result.getTrucks();
+            assertThat(fleet).hasSize(2_000_000_000);
+            assertThat(fleet.getOpened().size()).isLessThanOrEqualTo(order.size());
+            assertThat(metricsService.countPackages(fleet) + result.getUnplaced()).isEqualTo(order.size());
+            assertThat(metricsService.countUnusedTrucks(fleet).values().stream().mapToLong(Integer::longValue).sum())
+                    .isEqualTo(fleet.size() - metricsService.countUsedTrucks(fleet));
+        }
+        assertThat(new Fleet().candidates(3)).isEmpty();
+    }
+
+    @Test
+    void testInterruptedPackingStopsInsteadOfRunningToTheEnd() {
+        List<Shape> order = Collections.nCopies(40, Shape.compile("999:999:999", "9"));
+        for (PackingMode mode : new PackingMode[]{PackingMode.GRID, PackingMode.SKYLINE, PackingMode.FFD}) {
+            Thread.currentThread().interrupt();
+            try {
+                assertThatThrownBy(() -> packingService.pack(mode, order, "6x6*20"))
+                        .isInstanceOf(CustomException.class)
+                        .hasMessageContaining("прервана");
+            } finally {
+                Thread.interrupted();
+            }
+        }
+        assertThat(packingService.pack(PackingMode.GRID, order, "6x6*20").getUnplaced()).isZero();
+    }
+
+    @Test
+    void testRepeatedOrderIsServedFromCacheUntilFormChanges() {
+        structureService.saveStructure(structure("Квадрат", "999:999:999", "9"));
+        structureService.saveStructure(structure("Точка", "1", "1"));
+        PackingResult first = packingService.pack("G", "Квадрат*4,Точка", "6x6,6x6", PackingService.DEFAULT_BUDGET);
+        PackingResult repeated = packingService.pack("G", "Точка,Квадрат*4", "6x6*2", PackingService.DEFAULT_BUDGET);
+        assertThat(repeated).isSameAs(first);
+        assertThat(packingService.pack("K", "Квадрат*4,Точка", "6x6,6x6", PackingService.DEFAULT_BUDGET))
+                .isNotSameAs(first);
+        assertThat(packingResultCache.getHits()).isEqualTo(1);
+        assertThat(packingResultCache.getMisses()).isEqualTo(2);
+        assertThat(meterRegistry.get(MetricsService.PACKAGES_PLACED).counter().count()).isEqualTo(3 * 5);
+
+        structureService.updateSymbol("Точка", "2");
+        assertThat(packingResultCache.size()).isZero();
+        PackingResult updated = packingService.pack("G", "Квадрат*4,Точка", "6x6,6x6", PackingService.DEFAULT_BUDGET);
+        assertThat(updated).isNotSameAs(first);
+        assertThat(updated.getTrucks().stream().flatMap(truck -> truck.getPackages().stream())
+                .map(aPackage -> aPackage.getShape().getSymbol())).contains("2");
+    }
+
+    @Test
+    void testRepeatedBatchIsServedFromCacheUntilFormChanges() {
+        structureService.saveStructure(structure("Квадрат", "999:999:999", "9"));
+        structureService.saveStructure(structure("Точка", "1", "1"));
+        PackagePlan first = packingService.packSkylineBatch("Квадрат*4,Точка", "6x6,6x6");
+        PackagePlan repeated = packingService.packSkylineBatch("Точка,Квадрат*4", "6x6*2");
+        assertThat(repeated).isSameAs(first);
+        assertThat(packingService.pack("K", "Квадрат*4,Точка", "6x6,6x6", PackingService.DEFAULT_BUDGET).getUnplaced())
+                .isEqualTo(first.getUnplaced()).isZero();
+        assertThat(packingResultCache.getHits()).isEqualTo(1);
+        assertThat(packingResultCache.getMisses()).isEqualTo(2);
+        assertThat(meterRegistry.get(MetricsService.PACKAGES_PLACED).counter().count()).isEqualTo(3 * 5);
+
+        structureService.updateSymbol("Точка", "2");
+        assertThat(packingResultCache.size()).isZero();
+        assertThat(packingService.packSkylineBatch("Квадрат*4,Точка", "6x6,6x6")).isNotSameAs(first);
+    }
+
+    private static Structure structure(String name, String form, String symbol) {
+        Structure structure = new Structure();
+        structure.setName(name);
+        structure.setForm(form);
+        structure.setSymbol(symbol);
+        return structure;
+    }
+
+    private static long usedTrucks(PackingResult result) {
+        return result.getTrucks().stream().filter(truck -> !truck.getPackages().isEmpty()).count();
+    }
+
+    private static int placedPackages(PackingResult result) {
+        return result.getTrucks().stream().flatMap(truck -> truck.getPackages().stream())
+                .mapToInt(Package::getCount).sum();
+    }
+
+    @Test
+    void testParallelJobsDoNotShareTrucks() throws Exception {
+        List<Shape> order = Collections.nCopies(40, Shape.compile("999:999:999", "9"));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<PackingResult>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                PackingMode mode = i % 2 == 0 ? PackingMode.GRID : PackingMode.COMPLEX;
+                futures.add(executor.submit(() -> packingService.pack(mode, order, "6x6,6x6,6x6,6x6,6x6,6x6,6x6,6x6,6x6,6x6")));
+            }
+            for (Future<PackingResult> future : futures) {
+                PackingResult result = future.get();
+                if (result.getMode() == PackingMode.GRID) {
+                    assertThat(result.getUnplaced()).isZero();
+                    assertThat(result.getTrucks()).allSatisfy(truck -> assertThat(truck.getPackages()).hasSize(4));
+                } else {
+                    assertThat(result.getTrucks()).allSatisfy(truck -> assertThat(truck.getPackages()).hasSizeLessThanOrEqualTo(2));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package ru.liga.packagetruckspring;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.liga.packagetruckspring.exception.CustomException;
+import ru.liga.packagetruckspring.model.Structure;
+import ru.liga.packagetruckspring.model.Truck;
+import ru.liga.packagetruckspring.repository.StructureRepository;
+import ru.liga.packagetruckspring.service.MetricsService;
+import ru.liga.packagetruckspring.service.PackageService;
+import ru.liga.packagetruckspring.service.PackingResultCache;
+import ru.liga.packagetruckspring.service.PlanService;
+import ru.liga.packagetruckspring.service.StructureService;
+import ru.liga.packagetruckspring.service.TruckService;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = "spring.shell.interactive.enabled=false")
+class PlanServiceTest {
+
+    private PlanService planService;
+
+    @BeforeEach
+    void setUp() {
+        StructureService structureService = new StructureService(new StructureRepository(), new PackingResultCache());
+        structureService.saveStructure(structure("Квадрат", "999:999:999", "9"));
+        structureService.saveStructure(structure("Точка", "1", "1"));
+        structureService.saveStructure(structure("Плита", "55:55", "5"));
+        structureService.saveStructure(structure("Куб", "999:999:999", "9"));
+        planService = new PlanService(structureService, new PackageService(),
+                new TruckService(new ObjectMapper()),
+                new MetricsService(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void testAddUsesFreeSpaceOfExistingPlan() {
+        assertThatThrownBy(() -> planService.addToPlan("Точка")).isInstanceOf(CustomException.class);
+        List<Truck> trucks = planService.createPlan("Квадрат*3", "6x6*10");
+        Truck first = trucks.get(0);
+
+        assertThat(planService.addToPlan("Квадрат")).isEqualTo(1);
+        assertThat(planService.addToPlan("Точка")).isEqualTo(2);
+        assertThat(planService.getTrucks()).isSameAs(trucks);
+        assertThat(first.getGrid().getOccupiedCells()).isEqualTo(36);
+        assertThatThrownBy(() -> planService.addToPlan("Нет такой")).isInstanceOf(CustomException.class);
+    }
+
+    @Test
+    void testAddRepacksPlanTogetherWithNewPackageWhenNoSpaceIsLeft() {
+        planService.createPlan("Точка*2,Плита*3", "4x4");
+        assertThat(planService.removeFromPlan("Точка")).isFalse();
+        assertThat(planService.removeFromPlan("Точка")).isFalse();
+        List<Truck> fragmented = planService.getTrucks();
+        assertThat(fragmented.get(0).getGrid().getFreeCells()).isEqualTo(4);
+
+        assertThat(planService.addToPlan("Плита")).isEqualTo(1);
+        assertThat(planService.getTrucks()).isNotSameAs(fragmented);
+        assertThat(planService.getTrucks().get(0).getPackages()).hasSize(4);
+        assertThat(planService.getTrucks().get(0).getGrid().getFreeCells()).isZero();
+        assertThatThrownBy(() -> planService.addToPlan("Точка")).isInstanceOf(CustomException.class);
+    }
+
+    @Test
+    void testRemoveFreesCellsAndRepacksFragmentedPlan() {
+        planService.createPlan("Квадрат*4,Точка*4", "6x6*3");
+        assertThat(planService.fragmentation()).isZero();
+
+        assertThat(planService.removeFromPlan("Точка")).isFalse();
+        assertThat(planService.getTrucks().get(0).getGrid().getOccupiedCells()).isEqualTo(21);
+        assertThat(planService.removeFromPlan("Квадрат")).isTrue();
+        assertThat(planService.getTrucks().stream().filter(truck -> !truck.getPackages().isEmpty())).hasSize(1);
+        assertThat(planService.fragmentation()).isZero();
+        for (int i = 0; i < 3; i++) {
+            planService.removeFromPlan("Точка");
+        }
+        assertThatThrownBy(() -> planService.removeFromPlan("Точка")).isInstanceOf(CustomException.class);
+    }
+
+    @Test
+    void testRemoveTakesPackageOfNamedStructureNotOfSameForm() {
+        planService.createPlan("Куб,Квадрат", "6x6*2");
+
+        assertThat(planService.removeFromPlan("Куб")).isFalse();
+        assertThatThrownBy(() -> planService.removeFromPlan("Куб")).isInstanceOf(CustomException.class);
+        assertThat(planService.removeFromPlan("Квадрат")).isFalse();
+        assertThatThrownBy(() -> planService.removeFromPlan("Квадрат")).isInstanceOf(CustomException.class);
+    }
+
+    private static Structure structure(String name, String form, String symbol) {
+        Structure structure = new Structure();
+        structure.setName(name);
+        structure.setForm(form);
+        structure.setSymbol(symbol);
+        return structure;
+    }
+
+}
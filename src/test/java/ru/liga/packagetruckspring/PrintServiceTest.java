@@ -0,0 +1,61 @@
+package ru.liga.packagetruckspring;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.liga.packagetruckspring.model.Package;
+import ru.liga.packagetruckspring.model.Shape;
+import ru.liga.packagetruckspring.model.Truck;
+import ru.liga.packagetruckspring.repository.StructureRepository;
+import ru.liga.packagetruckspring.service.PrintService;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "spring.shell.interactive.enabled=false")
+class PrintServiceTest {
+
+    private final PrintService printService = new PrintService(new StructureRepository());
+
+    @Test
+    void testWriteTrucksPrintsRequestedPage() throws Exception {
+        List<Truck> trucks = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            Truck truck = new Truck(2, 3);
+            truck.place(new Package(Shape.compile(String.valueOf(i), String.valueOf(i))), 1, 0);
+            trucks.add(truck);
+            trucks.add(new Truck(2, 3));
+        }
+        StringWriter writer = new StringWriter();
+        assertThat(printService.writeTrucks(trucks, 1, 2, writer)).isEqualTo(2);
+
+        String n = System.lineSeparator();
+        assertThat(writer.toString()).isEqualTo(
+                "+   +" + n + "+ 2 +" + n + "+++++" + n + "\r" + n
+                        + "+   +" + n + "+ 3 +" + n + "+++++" + n + "\r" + n
+                        + "Показаны грузовики 2-3 из 5" + n);
+    }
+
+    @Test
+    void testWriteTrucksWithoutLimitPrintsStackedTrucks() throws Exception {
+        Truck stacked = new Truck(3, 3);
+        stacked.getPackages().add(new Package(Shape.compile("1", "1")));
+        stacked.getPackages().add(new Package(Shape.compile("22", "2")));
+        List<Truck> trucks = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            trucks.add(stacked);
+        }
+        StringWriter writer = new StringWriter();
+        assertThat(printService.writeTrucks(trucks, 0, 0, writer)).isEqualTo(150);
+
+        String n = System.lineSeparator();
+        String truck = "+   +" + n + "+1  +" + n + "+22 +" + n + "+++++" + n + "\r" + n;
+        assertThat(writer.toString()).isEqualTo(truck.repeat(150));
+        StringWriter page = new StringWriter();
+        assertThat(printService.writeTrucks(trucks, 149, 0, page)).isEqualTo(1);
+        assertThat(page.toString()).isEqualTo(truck + "Показаны грузовики 150-150 из 150" + n);
+    }
+
+}
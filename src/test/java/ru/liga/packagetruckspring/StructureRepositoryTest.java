@@ -0,0 +1,108 @@
+package ru.liga.packagetruckspring;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.liga.packagetruckspring.exception.CustomException;
+import ru.liga.packagetruckspring.model.Shape;
+import ru.liga.packagetruckspring.model.Structure;
+import ru.liga.packagetruckspring.repository.StructureRepository;
+import ru.liga.packagetruckspring.service.PackingResultCache;
+import ru.liga.packagetruckspring.service.StructureService;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = "spring.shell.interactive.enabled=false")
+class StructureRepositoryTest {
+
+    private StructureRepository structureRepository;
+
+    @BeforeEach
+    void setUp() {
+        structureRepository = new StructureRepository();
+        structureRepository.saveAll(Arrays.asList(
+                structure("Штанка", "#   #:#####:#   #", "#"),
+                structure("Квадрат", "$$$:$ $:$ $:$$$", "$")));
+    }
+
+    @Test
+    void testFindByNameIgnoresCase() {
+        assertThat(structureRepository.findByName("штанка")).isPresent();
+        assertThat(structureRepository.findByName("КВАДРАТ")).isPresent();
+        assertThat(structureRepository.findByName("Рычаг")).isEmpty();
+    }
+
+    @Test
+    void testUpdateWithRenameReindexesStructure() {
+        structureRepository.update("штанка", structure("Рычаг", "=====", "="));
+        assertThat(structureRepository.findByName("Штанка")).isEmpty();
+        Structure renamed = structureRepository.findByName("рычаг").orElseThrow();
+        assertThat(structureRepository.findShape(renamed).orElseThrow().getCellCount()).isEqualTo(5);
+    }
+
+    @Test
+    void testDuplicateNamesAreRejected() {
+        assertThatThrownBy(() -> structureRepository.save(structure("квадрат", "1", "1")))
+                .isInstanceOf(CustomException.class);
+        assertThatThrownBy(() -> structureRepository.saveAll(Arrays.asList(
+                structure("Рычаг", "=====", "="), structure("РЫЧАГ", "=", "="))))
+                .isInstanceOf(CustomException.class);
+        assertThatThrownBy(() -> structureRepository.update("Штанка", structure("Квадрат", "1", "1")))
+                .isInstanceOf(CustomException.class);
+        assertThat(structureRepository.findAll()).hasSize(2);
+    }
+
+    @Test
+    void testClearDropsIndex() {
+        structureRepository.clear();
+        assertThat(structureRepository.findByName("Штанка")).isEmpty();
+        structureRepository.save(structure("Штанка", "#", "#"));
+        assertThat(structureRepository.findByName("штанка")).isPresent();
+    }
+
+    @Test
+    void testFailedReloadKeepsCatalog() {
+        StructureService structureService = new StructureService(structureRepository, new PackingResultCache());
+        assertThatThrownBy(() -> structureService.replaceStructures(consumer -> {
+            consumer.accept(structure("Точка", "1", "1"));
+            throw new CustomException("Ошибка чтения файла");
+        })).isInstanceOf(CustomException.class);
+        assertThat(structureRepository.findAll()).extracting(Structure::getName).containsExactly("Штанка", "Квадрат");
+
+        assertThat(structureService.replaceStructures(consumer -> {
+            consumer.accept(structure("Точка", "1", "1"));
+            return 1;
+        })).isEqualTo(1);
+        assertThat(structureRepository.findAll()).extracting(Structure::getName).containsExactly("Точка");
+        assertThat(structureService.getShapesForName("Точка")).hasSize(1);
+    }
+
+    @Test
+    void testReloadReusesShapesOfUnchangedStructures() {
+        StructureService structureService = new StructureService(structureRepository, new PackingResultCache());
+        Shape square = structureService.getShapesForName("Квадрат").get(0);
+        Shape bar = structureService.getShapesForName("Штанка").get(0);
+
+        structureService.replaceStructures(consumer -> {
+            consumer.accept(structure("Квадрат", "$$$:$ $:$ $:$$$", "$"));
+            consumer.accept(structure("Штанка", "==", "="));
+            return 2;
+        });
+
+        assertThat(structureService.getShapesForName("квадрат").get(0)).isSameAs(square);
+        assertThat(structureService.getShapesForName("Штанка").get(0)).isNotSameAs(bar)
+                .extracting(Shape::getCellCount).isEqualTo(2);
+    }
+
+    private static Structure structure(String name, String form, String symbol) {
+        Structure structure = new Structure();
+        structure.setName(name);
+        structure.setForm(form);
+        structure.setSymbol(symbol);
+        return structure;
+    }
+
+}
@@ -3,21 +3,30 @@ package ru.liga.packagetruckspring;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.io.StringWriter;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.boot.test.context.SpringBootTest;
+import ru.liga.packagetruckspring.model.Fleet;
+import ru.liga.packagetruckspring.model.PackageBatch;
+import ru.liga.packagetruckspring.model.PackagePlan;
+import ru.liga.packagetruckspring.model.Shape;
 import ru.liga.packagetruckspring.model.Truck;
 import ru.liga.packagetruckspring.model.Package;
+import ru.liga.packagetruckspring.model.TruckPackageJson;
+import ru.liga.packagetruckspring.repository.PackageRepository;
 import ru.liga.packagetruckspring.repository.TruckRepository;
+import ru.liga.packagetruckspring.service.PackageService;
 import ru.liga.packagetruckspring.service.TruckService;
 
 @SpringBootTest(properties = "spring.shell.interactive.enabled=false")
@@ -27,20 +36,19 @@ class TruckServiceTest {
     @Mock
     private TruckRepository truckRepository;
 
-    @InjectMocks
-    private TruckService truckService;
+    private final TruckService truckService = new TruckService(new ObjectMapper());
 
     @BeforeEach
     public void setup() {
-        List<Truck> truckList = new ArrayList<>();
-        truckList.add(new Truck(10, 5));
+        Fleet truckList = new Fleet();
+        truckList.addTruck(new Truck(10, 5));
         lenient().when(truckRepository.findAll()).thenReturn(truckList);
     }
 
     @Test
     public void testCreateTruck() {
         String params = "10x5,15x10";
-        truckService.createTruck(params);
+        truckService.createTruck(truckRepository, params);
         ArgumentCaptor<Truck> truckCaptor = ArgumentCaptor.forClass(Truck.class);
         verify(truckRepository).clear();
         verify(truckRepository, times(2)).save(truckCaptor.capture());
@@ -57,17 +65,45 @@ class TruckServiceTest {
         List<Package> readyPackages = Arrays.asList(
                 new Package(2,2,5,new String[]{"999","999","999"}),
                 new Package(5, 2,7,new String[]{"999","999","999"}));
-        List<Truck> trucks = truckService.createSimplePack(readyPackages);
+        List<Truck> trucks = truckService.createSimplePack(truckRepository, readyPackages);
         assertEquals(1, trucks.get(0).getPackages().size());
         verify(truckRepository, times(2)).findAll();
     }
 
+    @Test
+    public void testStackedTruckCountsCellsWithoutGrid() {
+        List<Package> readyPackages = Arrays.asList(
+                new Package(1, 3, 3, new String[]{"333"}),
+                new Package(1, 2, 2, new String[]{"22"}));
+        Fleet trucks = (Fleet) truckService.createComplexPackFoHeight(truckRepository, readyPackages);
+        Truck truck = trucks.get(0);
+        assertEquals(2, truck.getPackages().size());
+        assertEquals(5, truck.getOccupiedCells());
+        assertEquals(45, trucks.freeCellsOf(0));
+        assertThrows(UnsupportedOperationException.class, truck::getGrid);
+    }
+
+    @Test
+    public void testCreateSimplePackSkipsNarrowTruck() {
+        Fleet truckList = new Fleet();
+        truckList.addTruck(new Truck(3, 2));
+        truckList.addTruck(new Truck(3, 5));
+        when(truckRepository.findAll()).thenReturn(truckList);
+        List<Package> readyPackages = Arrays.asList(
+                new Package(1, 4, 4, new String[]{"4444"}),
+                new Package(1, 3, 3, new String[]{"333"}));
+        List<Truck> trucks = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> truckService.createSimplePack(truckRepository, readyPackages));
+        assertTrue(trucks.get(0).getPackages().isEmpty());
+        assertEquals(1, trucks.get(1).getPackages().size());
+    }
+
     @Test
     public void testCreateComplexPackForWidth() {
         List<Package> readyPackages = Arrays.asList(
                 new Package(2,2,5,new String[]{"999","999","999"}),
                 new Package(5, 2,7,new String[]{"999","999","999"}));
-        List<Truck> trucks = truckService.createComplexPackForWidth(readyPackages);
+        List<Truck> trucks = truckService.createComplexPackForWidth(truckRepository, readyPackages);
         assertFalse(trucks.get(0).getPackages().isEmpty());
         verify(truckRepository).findAll();
     }
@@ -77,8 +113,90 @@ class TruckServiceTest {
         List<Package> readyPackages = Arrays.asList(
                 new Package(2,2,5,new String[]{"999","999","999"}),
                 new Package(5, 2,7,new String[]{"999","999","999"}));
-        List<Truck> trucks = truckService.createComplexPackFoHeight(readyPackages);
+        List<Truck> trucks = truckService.createComplexPackFoHeight(truckRepository, readyPackages);
         assertEquals(2, trucks.get(0).getPackages().size());
         verify(truckRepository).findAll();
     }
+
+    @Test
+    public void testCreateJsonForTruckMatchesTreeSerialization() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        TruckService jsonTruckService = new TruckService(objectMapper);
+        Truck truck = new Truck(6, 6);
+        truck.getPackages().add(new Package(3, 5, 5, new String[]{"#   #", "#####", "#   #"}));
+        truck.getPackages().add(new Package(2, 3, 4, new String[]{"Ёж", "\"7\"77"}));
+        List<Truck> trucks = Arrays.asList(truck, new Truck(6, 6));
+        String expected = objectMapper.writeValueAsString(TruckPackageJson.builder()
+                .trucks(List.of(TruckPackageJson.Truck.builder().orders(List.of(
+                        TruckPackageJson.Order.builder().order("#   #:#####:#   #").build(),
+                        TruckPackageJson.Order.builder().order("Ёж:\"7\"77").build())).build()))
+                .build());
+        assertEquals(expected, jsonTruckService.createJsonForTruck(trucks));
+    }
+
+    @Test
+    public void testCreateGridPackInterlocksShapes() {
+        Fleet truckList = new Fleet();
+        truckList.addTruck(new Truck(3, 5));
+        when(truckRepository.findAll()).thenReturn(truckList);
+        List<Package> readyPackages = Arrays.asList(
+                new Package(3, 5, 5, new String[]{"#   #", "#####", "#   #"}),
+                new Package(1, 3, 3, new String[]{"333"}),
+                new Package(1, 3, 3, new String[]{"333"}));
+        List<Truck> trucks = truckService.createGridPack(truckRepository, readyPackages);
+        Truck truck = trucks.get(0);
+        assertEquals(3, truck.getPlacements().size());
+        assertEquals(15, truck.getGrid().getOccupiedCells());
+        assertEquals(1, truck.getPlacements().get(1).getX());
+        assertEquals(0, truck.getPlacements().get(1).getY());
+        assertEquals(2, truck.getPlacements().get(2).getY());
+    }
+
+    @Test
+    public void testCreateSkylinePackDropsShapesToLowestPosition() {
+        Fleet truckList = new Fleet();
+        truckList.addTruck(new Truck(3, 3));
+        when(truckRepository.findAll()).thenReturn(truckList);
+        List<Package> readyPackages = Arrays.asList(
+                new Package(1, 1, 1, new String[]{"5"}),
+                new Package(2, 1, 3, new String[]{"  3", "333"}),
+                new Package(2, 2, 1, new String[]{"11", "1"}));
+        List<Truck> trucks = truckService.createSkylinePack(truckRepository, readyPackages);
+        Truck truck = trucks.get(0);
+        assertEquals(3, truck.getPlacements().size());
+        assertEquals(8, truck.getGrid().getOccupiedCells());
+        assertEquals(0, truck.getPlacements().get(1).getX());
+        assertEquals(1, truck.getPlacements().get(1).getY());
+        assertEquals(2, truck.getPlacements().get(2).getX());
+        assertEquals(2, truck.getPlacements().get(2).getY());
+    }
+
+    @Test
+    public void testSkylineBatchMatchesObjectPipeline() {
+        TruckService realTruckService = new TruckService(new ObjectMapper());
+        PackageService packageService = new PackageService();
+        Shape square = Shape.compile("999:999:999", "9");
+        Shape corner = Shape.compile("8 :88", "8");
+        Shape line = Shape.compile("4444", "4");
+        List<Shape> shapes = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            shapes.add(i % 3 == 0 ? square : i % 3 == 1 ? corner : line);
+        }
+        String fleet = "6x6,6x6,6x6,6x6,6x6,6x6,6x6,6x6";
+
+        TruckRepository objectTrucks = new TruckRepository();
+        realTruckService.createTruck(objectTrucks, fleet);
+        List<Truck> trucks = realTruckService.createSkylinePack(objectTrucks, packageService.sortSimpleShapes(new PackageRepository(), shapes));
+
+        TruckRepository batchTrucks = new TruckRepository();
+        realTruckService.createTruck(batchTrucks, fleet);
+        PackageBatch batch = PackageBatch.of(shapes);
+        PackagePlan plan = realTruckService.createSkylinePack(batchTrucks, batch, packageService.sortBatch(batch));
+        StringWriter writer = new StringWriter();
+        realTruckService.writeJsonForPlan(plan, writer);
+
+        assertEquals(3, batch.getCatalog().length);
+        assertEquals(0, plan.getUnplaced());
+        assertEquals(realTruckService.createJsonForTruck(trucks), writer.toString());
+    }
 }
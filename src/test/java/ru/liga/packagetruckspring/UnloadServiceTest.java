@@ -0,0 +1,97 @@
+package ru.liga.packagetruckspring;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.liga.packagetruckspring.model.Structure;
+import ru.liga.packagetruckspring.model.Truck;
+import ru.liga.packagetruckspring.model.UnloadReport;
+import ru.liga.packagetruckspring.repository.PackageRepository;
+import ru.liga.packagetruckspring.repository.StructureRepository;
+import ru.liga.packagetruckspring.repository.TruckRepository;
+import ru.liga.packagetruckspring.service.FileService;
+import ru.liga.packagetruckspring.service.MetricsService;
+import ru.liga.packagetruckspring.service.PackageService;
+import ru.liga.packagetruckspring.service.PackingResultCache;
+import ru.liga.packagetruckspring.service.StructureService;
+import ru.liga.packagetruckspring.service.TruckService;
+import ru.liga.packagetruckspring.service.UnloadService;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+@SpringBootTest(properties = "spring.shell.interactive.enabled=false")
+class UnloadServiceTest {
+
+    private StructureService structureService;
+    private FileService fileService;
+    private UnloadService unloadService;
+
+    @BeforeEach
+    void setUp() {
+        structureService = new StructureService(new StructureRepository(), new PackingResultCache());
+        structureService.saveStructure(structure("Квадрат", "999:999:999", "9"));
+        structureService.saveStructure(structure("Угол", "8 :88", "8"));
+        structureService.saveStructure(structure("Точка", "1", "1"));
+        fileService = new FileService(new ObjectMapper());
+        unloadService = new UnloadService(structureService, fileService, new MetricsService(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void testUnloadRestoresPackedOrder(@TempDir Path dir) {
+        TruckService truckService = new TruckService(new ObjectMapper());
+        TruckRepository trucks = new TruckRepository();
+        truckService.createTruck(trucks, "6x6*10");
+        List<Truck> packed = truckService.createGridPack(trucks, new PackageService()
+                .sortSimpleShapes(new PackageRepository(), structureService.getShapesForName("Квадрат*6,Угол*3,Точка*2")));
+        Path result = dir.resolve("result.json");
+        fileService.writeJsonFile(result.toString(), writer -> truckService.writeJsonForTruck(packed, writer));
+
+        List<Map<String, Integer>> loads = new ArrayList<>();
+        UnloadReport report = unloadService.unload(result.toString(), (truck, counts) -> loads.add(counts));
+
+        assertThat(report.getTrucks()).isEqualTo(loads.size())
+                .isEqualTo(packed.stream().filter(truck -> !truck.getPackages().isEmpty()).count());
+        assertThat(report.getPackages()).isEqualTo(11);
+        assertThat(report.getUnrecognized()).isZero();
+        assertThat(report.getTotals()).containsExactly(entry("Квадрат", 6L), entry("Угол", 3L), entry("Точка", 2L));
+        assertThat(loads.stream().mapToInt(counts -> counts.values().stream().mapToInt(Integer::intValue).sum()).sum())
+                .isEqualTo(11);
+    }
+
+    @Test
+    void testUnloadCountsUnknownFormsPerTruck(@TempDir Path dir) throws Exception {
+        Path result = dir.resolve("result.json");
+        Files.writeString(result, "{\"trucks\":[{\"packages\":[{\"package\":\"1\"},{\"package\":\"8 :88\"},"
+                + "{\"package\":\"1\"}]},{\"height\":3,\"width\":3,\"packages\":[{\"package\":\"9998:9 88\",\"x\":0,\"y\":0},"
+                + "{\"x\":1,\"package\":\"1\",\"y\":2}]}]}", StandardCharsets.UTF_8);
+
+        List<Map<String, Integer>> loads = new ArrayList<>();
+        UnloadReport report = unloadService.unload(result.toString(), (truck, counts) -> loads.add(counts));
+
+        assertThat(loads.get(0)).containsExactly(entry("Точка", 2), entry("Угол", 1));
+        assertThat(loads.get(1)).containsExactly(entry(UnloadService.UNRECOGNIZED, 1), entry("Точка", 1));
+        assertThat(report.getTotals()).containsExactly(entry("Угол", 1L), entry("Точка", 3L));
+        assertThat(report.getUnrecognized()).isEqualTo(1);
+        assertThat(report.getPackages()).isEqualTo(5);
+    }
+
+    private static Structure structure(String name, String form, String symbol) {
+        Structure structure = new Structure();
+        structure.setName(name);
+        structure.setForm(form);
+        structure.setSymbol(symbol);
+        return structure;
+    }
+
+}
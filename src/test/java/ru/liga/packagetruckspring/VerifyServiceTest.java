@@ -0,0 +1,107 @@
+package ru.liga.packagetruckspring;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.liga.packagetruckspring.model.Package;
+import ru.liga.packagetruckspring.model.PackageBatch;
+import ru.liga.packagetruckspring.model.PackagePlan;
+import ru.liga.packagetruckspring.model.Shape;
+import ru.liga.packagetruckspring.model.Truck;
+import ru.liga.packagetruckspring.model.Violation;
+import ru.liga.packagetruckspring.repository.PackageRepository;
+import ru.liga.packagetruckspring.repository.TruckRepository;
+import ru.liga.packagetruckspring.service.FileService;
+import ru.liga.packagetruckspring.service.MetricsService;
+import ru.liga.packagetruckspring.service.PackageService;
+import ru.liga.packagetruckspring.service.TruckService;
+import ru.liga.packagetruckspring.service.VerifyService;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "spring.shell.interactive.enabled=false")
+class VerifyServiceTest {
+
+    private final Shape square = Shape.compile("999:999:999", "9");
+    private final Shape corner = Shape.compile("8 :88", "8");
+    private TruckService truckService;
+    private VerifyService verifyService;
+    private FileService fileService;
+
+    @BeforeEach
+    void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        truckService = new TruckService(objectMapper);
+        fileService = new FileService(objectMapper);
+        verifyService = new VerifyService(fileService, new MetricsService(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void testPackedPlanAndItsJsonAreValid(@TempDir Path dir) {
+        List<Shape> order = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            order.add(i % 2 == 0 ? square : corner);
+        }
+        TruckRepository trucks = new TruckRepository();
+        truckService.createTruck(trucks, "6x6*4");
+        List<Truck> packed = truckService.createGridPack(trucks,
+                new PackageService().sortSimpleShapes(new PackageRepository(), order));
+        assertThat(verifyService.verifyTrucks(packed, order)).isEmpty();
+
+        Path result = dir.resolve("result.json");
+        fileService.writeJsonFile(result.toString(), writer -> truckService.writeJsonForTruck(packed, writer));
+        assertThat(verifyService.verifyFile(result.toString(), order)).isEmpty();
+        assertThat(verifyService.verifyFile(result.toString(), order.subList(0, 9)))
+                .extracting(Violation::getReason).containsExactly("посылка 8 :88: в заказе 4, погружено 5");
+    }
+
+    @Test
+    void testBatchPlanIsVerifiedWithoutPackageObjects() {
+        PackageBatch batch = PackageBatch.of(List.of(square, corner, square, corner, square));
+        TruckRepository trucks = new TruckRepository();
+        truckService.createTruck(trucks, "6x6*3");
+        PackagePlan packed = truckService.createSkylinePack(trucks, batch, new int[]{0, 1, 2, 3, 4});
+        assertThat(packed.getUnplaced()).isZero();
+        assertThat(verifyService.verifyPlan(packed)).isEmpty();
+
+        PackagePlan overlapping = new PackagePlan(batch, new int[]{3, 3}, new int[]{3, 3});
+        overlapping.place(1, 1, 0, 0);
+        overlapping.place(0, 1, 0, 0);
+        assertThat(verifyService.verifyPlan(overlapping)).extracting(Violation::toString).containsExactly(
+                "грузовик 2, ряд 1, столбец 0: посылка 999:999:999 пересекается с другой посылкой",
+                "грузовик 2, ряд 0, столбец 0: посылка 999:999:999 пересекается с другой посылкой");
+    }
+
+    @Test
+    void testOverlapBoundsAndRepeatsAreReportedWithCoordinates(@TempDir Path dir) throws Exception {
+        Truck truck = new Truck(4, 4);
+        Package first = new Package(square);
+        truck.place(first, 0, 0);
+        truck.place(new Package(corner), 2, 1);
+        Truck other = new Truck(4, 4);
+        other.place(first, 1, 1);
+        List<Violation> violations = verifyService.verifyTrucks(List.of(new Truck(4, 4), truck, other), null);
+        assertThat(violations).extracting(Violation::toString).containsExactly(
+                "грузовик 2, ряд 2, столбец 2: посылка 8 :88 пересекается с другой посылкой",
+                "грузовик 2, ряд 1, столбец 2: посылка 8 :88 пересекается с другой посылкой",
+                "грузовик 3: посылка 999:999:999 погружена повторно");
+
+        Path result = dir.resolve("result.json");
+        Files.writeString(result, "{\"trucks\":[{\"packages\":[{\"package\":\"1\"}]},"
+                + "{\"height\":3,\"width\":3,\"packages\":[{\"package\":\"999:999:999\",\"x\":1,\"y\":0},"
+                + "{\"package\":\"22\",\"x\":0,\"y\":2},{\"package\":\"4444\"}]}]}", StandardCharsets.UTF_8);
+        assertThat(verifyService.verifyFile(result.toString(), null)).extracting(Violation::toString).containsExactly(
+                "грузовик 2, ряд 0, столбец 1: посылка 999:999:999 выходит за границы кузова 3x3",
+                "грузовик 2, ряд 0, столбец 3: посылка 4444 шире кузова 3x3");
+    }
+
+}
@@ -0,0 +1,106 @@
+package ru.liga.packagetruckspring.benchmark;
+
+import ru.liga.packagetruckspring.model.Structure;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Генератор синтетических данных для бенчмарков: каталог форм, заказ и парк грузовиков.
+ * Генерация детерминирована, поэтому результаты разных запусков сопоставимы.
+ */
+final class BenchmarkData {
+
+    private static final String SYMBOLS = "123456789#$%&@*=+";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Набор форм каталога.
+     */
+    enum ShapeMix {
+        /** Сплошные прямоугольники до 3x3. */
+        SMALL,
+        /** Сплошные прямоугольники до 5x5. */
+        MIXED,
+        /** Фигуры с пустыми клетками до 5x5. */
+        IRREGULAR
+    }
+
+    /**
+     * Генерирует каталог форм. Все формы не шире и не выше 5 клеток, поэтому помещаются в кузов 6x6.
+     *
+     * @param size количество форм.
+     * @param mix набор форм.
+     * @param seed начальное значение генератора.
+     * @return каталог структур с уникальными именами.
+     */
+    static List<Structure> catalog(int size, ShapeMix mix, long seed) {
+        Random random = new Random(seed);
+        List<Structure> structures = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String symbol = String.valueOf(SYMBOLS.charAt(i % SYMBOLS.length()));
+            Structure structure = new Structure();
+            structure.setName("Форма-" + i);
+            structure.setForm(form(random, mix, symbol.charAt(0)));
+            structure.setSymbol(symbol);
+            structures.add(structure);
+        }
+        return structures;
+    }
+
+    /**
+     * Генерирует заказ из случайных форм каталога.
+     *
+     * @param catalog каталог структур.
+     * @param count количество посылок в заказе.
+     * @param seed начальное значение генератора.
+     * @return список форм заказа.
+     */
+    static List<Structure> order(List<Structure> catalog, int count, long seed) {
+        Random random = new Random(seed);
+        List<Structure> order = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            order.add(catalog.get(random.nextInt(catalog.size())));
+        }
+        return order;
+    }
+
+    /**
+     * Формирует описание парка грузовиков для параметра --size.
+     *
+     * @param truckSize размер одного грузовика, например "6x6".
+     * @param count количество грузовиков.
+     * @return строка парка.
+     */
+    static String fleet(String truckSize, int count) {
+        StringBuilder fleet = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                fleet.append(',');
+            }
+            fleet.append(truckSize);
+        }
+        return fleet.toString();
+    }
+
+    private static String form(Random random, ShapeMix mix, char symbol) {
+        int maxSide = mix == ShapeMix.SMALL ? 3 : 5;
+        int height = 1 + random.nextInt(maxSide);
+        int width = 1 + random.nextInt(maxSide);
+        StringBuilder form = new StringBuilder();
+        for (int r = 0; r < height; r++) {
+            if (r > 0) {
+                form.append(':');
+            }
+            for (int c = 0; c < width; c++) {
+                boolean cell = mix != ShapeMix.IRREGULAR || c == 0 || random.nextInt(3) > 0;
+                form.append(cell ? symbol : ' ');
+            }
+        }
+        return form.toString();
+    }
+
+}
@@ -0,0 +1,190 @@
+package ru.liga.packagetruckspring.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.liga.packagetruckspring.model.Package;
+import ru.liga.packagetruckspring.model.PackageBatch;
+import ru.liga.packagetruckspring.model.PackagePlan;
+import ru.liga.packagetruckspring.model.Shape;
+import ru.liga.packagetruckspring.model.Structure;
+import ru.liga.packagetruckspring.model.Truck;
+import ru.liga.packagetruckspring.repository.PackageRepository;
+import ru.liga.packagetruckspring.repository.StructureRepository;
+import ru.liga.packagetruckspring.repository.TruckRepository;
+import ru.liga.packagetruckspring.service.PackageService;
+import ru.liga.packagetruckspring.service.PrintService;
+import ru.liga.packagetruckspring.service.TruckService;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Бенчмарки этапов погрузки: сортировка посылок, загрузка грузовиков, формирование json и печать.
+ * Методы загрузки включают создание парка грузовиков, так как алгоритмы изменяют грузовики на месте.
+ * Запуск: {@code mvn -P benchmark verify -DskipTests}, результаты сохраняются в target/jmh-result.json.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class PackingBenchmark {
+
+    private static final long SEED = 42L;
+
+    @Param({"10", "1000"})
+    private int catalogSize;
+
+    @Param({"1000"})
+    private int orderCount;
+
+    @Param({"6x6", "10x12"})
+    private String truckSize;
+
+    @Param({"SMALL", "MIXED", "IRREGULAR"})
+    private String shapeMix;
+
+    private PackageService packageService;
+    private TruckService truckService;
+    private PrintService printService;
+    private PackageRepository packageRepository;
+    private TruckRepository truckRepository;
+    private String fleet;
+    private List<String> forms;
+    private List<Shape> shapes;
+    private List<Package> readyPackages;
+    private List<Truck> widthTrucks;
+    private List<Package> complexPackages;
+    private List<Truck> packedTrucks;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        StructureRepository structureRepository = new StructureRepository();
+        List<Structure> catalog = BenchmarkData.catalog(catalogSize, BenchmarkData.ShapeMix.valueOf(shapeMix), SEED);
+        structureRepository.saveAll(catalog);
+        List<Structure> order = BenchmarkData.order(catalog, orderCount, SEED);
+
+        packageService = new PackageService();
+        truckService = new TruckService(new ObjectMapper());
+        printService = new PrintService(structureRepository);
+        packageRepository = new PackageRepository();
+        truckRepository = new TruckRepository();
+        fleet = BenchmarkData.fleet(truckSize, orderCount);
+        forms = order.stream().map(Structure::getForm).collect(Collectors.toList());
+        shapes = order.stream().map(s -> structureRepository.findShape(s).orElseThrow()).collect(Collectors.toList());
+
+        readyPackages = packageService.sortSimpleShapes(packageRepository, shapes);
+        truckService.createTruck(truckRepository, fleet);
+        widthTrucks = truckService.createComplexPackForWidth(truckRepository, readyPackages);
+        complexPackages = packageService.sortComplexOrders(packageRepository, widthTrucks);
+        truckService.createTruck(truckRepository, fleet);
+        packedTrucks = truckService.createComplexPackFoHeight(truckRepository, complexPackages);
+
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public List<Package> sortSimpleOrders() {
+        return packageService.sortSimpleOrders(packageRepository, forms);
+    }
+
+    @Benchmark
+    public List<Package> sortSimpleShapes() {
+        return packageService.sortSimpleShapes(packageRepository, shapes);
+    }
+
+    @Benchmark
+    public List<Package> sortComplexOrders() {
+        return packageService.sortComplexOrders(packageRepository, widthTrucks);
+    }
+
+    @Benchmark
+    public List<Truck> createSimplePack() {
+        truckService.createTruck(truckRepository, fleet);
+        return truckService.createSimplePack(truckRepository, readyPackages);
+    }
+
+    @Benchmark
+    public List<Truck> createComplexPackForWidth() {
+        truckService.createTruck(truckRepository, fleet);
+        return truckService.createComplexPackForWidth(truckRepository, readyPackages);
+    }
+
+    @Benchmark
+    public List<Truck> createComplexPackFoHeight() {
+        truckService.createTruck(truckRepository, fleet);
+        return truckService.createComplexPackFoHeight(truckRepository, complexPackages);
+    }
+
+    @Benchmark
+    public List<Truck> createGridPack() {
+        truckService.createTruck(truckRepository, fleet);
+        return truckService.createGridPack(truckRepository, readyPackages);
+    }
+
+    @Benchmark
+    public List<Truck> createSkylinePack() {
+        truckService.createTruck(truckRepository, fleet);
+        return truckService.createSkylinePack(truckRepository, readyPackages);
+    }
+
+    @Benchmark
+    public PackagePlan createSkylineBatch() {
+        TruckRepository truckRepository = new TruckRepository();
+        truckService.createTruck(truckRepository, fleet);
+        PackageBatch batch = PackageBatch.of(shapes);
+        return truckService.createSkylinePack(truckRepository, batch, packageService.sortBatch(batch));
+    }
+
+    @Benchmark
+    public List<Truck> createFirstFitDecreasingPack() {
+        TruckRepository truckRepository = new TruckRepository();
+        truckService.createTruck(truckRepository, fleet);
+        List<List<Package>> rows = truckService.createFitDecreasingPackForWidth(truckRepository, readyPackages, false);
+        return truckService.createFitDecreasingPackForHeight(truckRepository,
+                packageService.mergeRows(new PackageRepository(), rows), false);
+    }
+
+    @Benchmark
+    public List<Truck> createBestFitDecreasingPack() {
+        TruckRepository truckRepository = new TruckRepository();
+        truckService.createTruck(truckRepository, fleet);
+        List<List<Package>> rows = truckService.createFitDecreasingPackForWidth(truckRepository, readyPackages, true);
+        return truckService.createFitDecreasingPackForHeight(truckRepository,
+                packageService.mergeRows(new PackageRepository(), rows), true);
+    }
+
+    @Benchmark
+    public String createJsonForTruck() {
+        return truckService.createJsonForTruck(packedTrucks);
+    }
+
+    @Benchmark
+    public void printTrucks() {
+        printService.printTrucks(packedTrucks);
+    }
+
+}